@@ -43,11 +43,8 @@ public class OLBTestActivity extends Activity {
 		localBroadcastMgr.registerReceiver(rcvHighest, ifHighest);
 		
 		/*
-		 * On button click, we want to know if a receiver has been registered
-		 * before unregistering it. However there is no way of knowing this.
-		 * 
-		 * As a work-around; we explicitly make sure we register it first. Then, on
-		 * every click, unregister and re-register with the appropriate filters.
+		 * The consumed flag is reset for every broadcast, so the same receiver
+		 * is kept registered; each click only tells it whether to consume.
 		 */
 		localBroadcastMgr.registerReceiver(rcvMedium, ifMedium);
 		
@@ -60,15 +57,12 @@ public class OLBTestActivity extends Activity {
 
 			@Override
 			public void onClick(View v) {
-				localBroadcastMgr.unregisterReceiver(rcvMedium);
 				if (v == btnSend) {
-					rcvMedium = new OLBReceiverMedium(false);
+					rcvMedium.setShouldConsumeBroadcast(false);
 				} else if (v == btnSendConsume) {
-					rcvMedium = new OLBReceiverMedium(true);
+					rcvMedium.setShouldConsumeBroadcast(true);
 				}
 				
-				localBroadcastMgr.registerReceiver(rcvMedium,
-						ifMedium);
 				localBroadcastMgr.sendOrderedBroadcast(eventOccuredIntent);
 			}
 		};
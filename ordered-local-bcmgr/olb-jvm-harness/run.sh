@@ -0,0 +1,47 @@
+#!/bin/sh
+# Builds the library against the JVM stand-ins in stubs/ and runs the
+# harness on a plain JVM; no Android SDK needed, only a JDK.
+#
+#   ./run.sh test                     run every *Test class
+#   ./run.sh bench [Class [args...]]  run one *Benchmark class, or all
+#
+# -Dbench.millis and -Dbench.iterations can be passed through JAVA_OPTS.
+set -e
+cd "$(dirname "$0")"
+OUT=build/classes
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -nowarn -encoding UTF-8 -d "$OUT" \
+    $(find stubs ../olb-library/src src -name '*.java')
+
+PKG=in.curtech.android.olbharness
+mains() {
+    for f in src/in/curtech/android/olbharness/*"$1".java; do
+        [ -f "$f" ] && basename "$f" .java
+    done
+    return 0
+}
+
+case "$1" in
+test)
+    for c in $(mains Test); do
+        java $JAVA_OPTS -cp "$OUT" "$PKG.$c"
+    done
+    ;;
+bench)
+    shift
+    if [ $# -gt 0 ]; then
+        c=$1
+        shift
+        java $JAVA_OPTS -cp "$OUT" "$PKG.$c" "$@"
+    else
+        for c in $(mains Benchmark); do
+            java $JAVA_OPTS -cp "$OUT" "$PKG.$c"
+        done
+    fi
+    ;;
+*)
+    echo "usage: $0 test | bench [Class [args...]]" >&2
+    exit 2
+    ;;
+esac
@@ -0,0 +1,207 @@
+package in.curtech.android.olbharness;
+
+import in.curtech.android.common.OrderEnabledLocalBroadcastManager;
+import in.curtech.android.olbharness.DispatchBenchmark.LastReceiver;
+import in.curtech.android.olbharness.DispatchBenchmark.NopReceiver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.HandlerThread;
+
+/**
+ * Once the receiver set is stable, sending and dispatching a broadcast must
+ * not allocate: records come from the pool, receivers from the match cache,
+ * and Handler messages from the Message pool. Counted with the JVM's
+ * per-thread allocation counters, on the sending thread and the dispatch
+ * thread alike.
+ * <p>
+ * Class loading and compilation may still allocate on these threads after
+ * warm-up, so each check measures a few rounds and needs one of them to come
+ * in under {@link #SLACK_BYTES}; a per-broadcast allocation fails them all.
+ */
+public final class AllocationTest {
+
+    private static final String ACTION = "in.curtech.alloc.ACTION";
+    private static final String CATEGORY = "in.curtech.alloc.CATEGORY";
+
+    private static final int RECEIVERS = 10;
+    private static final int WARMUP = 50000;
+    private static final int BROADCASTS = 100000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Allowance for the counters themselves; a single byte per broadcast
+     * would be well over it.
+     */
+    private static final long SLACK_BYTES = 1024;
+
+    private AllocationTest() {
+    }
+
+    /** Sends {@link #BROADCASTS} broadcasts and returns the bytes allocated. */
+    interface Round {
+        long measure();
+    }
+
+    interface Send {
+        void send(OrderEnabledLocalBroadcastManager manager, Intent intent);
+    }
+
+    private static final Send SEND = new Send() {
+        @Override
+        public void send(OrderEnabledLocalBroadcastManager manager,
+                Intent intent) {
+            manager.sendBroadcast(intent);
+        }
+    };
+
+    private static final Send SEND_ORDERED = new Send() {
+        @Override
+        public void send(OrderEnabledLocalBroadcastManager manager,
+                Intent intent) {
+            manager.sendOrderedBroadcast(intent);
+        }
+    };
+
+    private static final Send SEND_SYNC = new Send() {
+        @Override
+        public void send(OrderEnabledLocalBroadcastManager manager,
+                Intent intent) {
+            manager.sendBroadcastSync(intent);
+        }
+    };
+
+    public static void main(String[] args) {
+        Harness.runTest("AllocationTest.sendBroadcast", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                checkDirect(SEND, new Intent(ACTION));
+            }
+        });
+        Harness.runTest("AllocationTest.sendOrderedBroadcast",
+                new Harness.Body() {
+                    @Override
+                    public void run() throws Exception {
+                        checkDirect(SEND_ORDERED, new Intent(ACTION));
+                    }
+                });
+        Harness.runTest("AllocationTest.categories", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                checkDirect(SEND_ORDERED,
+                        new Intent(ACTION).addCategory(CATEGORY));
+            }
+        });
+        Harness.runTest("AllocationTest.looper", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                checkLooper(SEND_ORDERED);
+            }
+        });
+        Harness.runTest("AllocationTest.sendBroadcastSync",
+                new Harness.Body() {
+                    @Override
+                    public void run() throws Exception {
+                        checkLooper(SEND_SYNC);
+                    }
+                });
+    }
+
+    private static LastReceiver register(
+            OrderEnabledLocalBroadcastManager manager) {
+        for (int i = 0; i < RECEIVERS; i++) {
+            final IntentFilter filter = new IntentFilter(ACTION);
+            filter.addCategory(CATEGORY);
+            filter.setPriority(i);
+            manager.registerReceiver(new NopReceiver(), filter);
+        }
+        final LastReceiver last = new LastReceiver();
+        final IntentFilter filter = new IntentFilter(ACTION);
+        filter.addCategory(CATEGORY);
+        filter.setPriority(IntentFilter.SYSTEM_LOW_PRIORITY);
+        manager.registerReceiver(last, filter);
+        return last;
+    }
+
+    /** Dispatch on the sending thread. */
+    static void checkDirect(final Send send, final Intent intent) {
+        final OrderEnabledLocalBroadcastManager manager = Harness
+                .newDirectManager();
+        final LastReceiver last = register(manager);
+        for (int i = 0; i < WARMUP; i++) {
+            send.send(manager, intent);
+        }
+        final Thread self = Thread.currentThread();
+        final long sent = last.count.get();
+        final int rounds = checkRounds(new Round() {
+            @Override
+            public long measure() {
+                final long before = Harness.allocatedBytes(self);
+                for (int i = 0; i < BROADCASTS; i++) {
+                    send.send(manager, intent);
+                }
+                return Harness.allocatedBytes(self) - before;
+            }
+        });
+        Harness.checkEquals(sent + (long) rounds * BROADCASTS,
+                last.count.get(), "Broadcasts delivered");
+    }
+
+    /**
+     * Dispatch on a Looper thread, one broadcast at a time, counting both
+     * threads.
+     */
+    static void checkLooper(final Send send) {
+        final HandlerThread looper = Harness.startLooper("alloc");
+        try {
+            final OrderEnabledLocalBroadcastManager manager = OrderEnabledLocalBroadcastManager
+                    .create(Harness.CONTEXT, looper.getLooper());
+            final LastReceiver last = register(manager);
+            final Intent intent = new Intent(ACTION);
+            sendAndWait(manager, send, intent, last.count, WARMUP);
+            final Thread self = Thread.currentThread();
+            checkRounds(new Round() {
+                @Override
+                public long measure() {
+                    final long before = Harness.allocatedBytes(self)
+                            + Harness.allocatedBytes(looper);
+                    sendAndWait(manager, send, intent, last.count,
+                            BROADCASTS);
+                    return Harness.allocatedBytes(self)
+                            + Harness.allocatedBytes(looper) - before;
+                }
+            });
+        } finally {
+            looper.quit();
+        }
+    }
+
+    private static void sendAndWait(OrderEnabledLocalBroadcastManager manager,
+            Send send, Intent intent, AtomicLong count, int broadcasts) {
+        for (int i = 0; i < broadcasts; i++) {
+            final long target = count.get() + 1;
+            send.send(manager, intent);
+            while (count.get() < target) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Measures rounds until one comes in under the slack, failing after
+     * {@link #ROUNDS}; returns the number of rounds measured.
+     */
+    private static int checkRounds(Round round) {
+        long least = Long.MAX_VALUE;
+        for (int i = 1; i <= ROUNDS; i++) {
+            least = Math.min(least, round.measure());
+            if (least <= SLACK_BYTES) {
+                return i;
+            }
+        }
+        throw new AssertionError(least + " bytes allocated for " + BROADCASTS
+                + " broadcasts in the best of " + ROUNDS + " rounds");
+    }
+}
@@ -0,0 +1,232 @@
+package in.curtech.android.olbharness;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A small stand-in for JMH, which is not available to this module: runs a
+ * {@link Case} on a number of threads at once, warms it up until an
+ * iteration takes {@link #ITERATION_MILLIS}, then measures
+ * {@link #ITERATIONS} iterations and prints time and bytes allocated per
+ * operation.
+ * <p>
+ * Allocation is read from the JVM's per-thread counters: the worker threads
+ * count around {@link Case#run} only, and any other threads passed in (the
+ * dispatch thread, say) over the whole iteration.
+ */
+final class Bench {
+
+    /**
+     * What is measured; each worker thread gets its own index. An iteration
+     * of {@code ops} operations is done in rounds of at most
+     * {@link #batchSize} operations, each round prepared and cleaned up
+     * outside of the measured time.
+     */
+    interface Case {
+        /** Operations per round, at most. */
+        int batchSize();
+
+        /** Prepares {@code ops} operations; not measured. */
+        void before(int thread, int ops) throws Exception;
+
+        /** Performs {@code ops} operations. */
+        void run(int thread, int ops) throws Exception;
+
+        /** Cleans up after {@link #run}; not measured. */
+        void after(int thread) throws Exception;
+    }
+
+    /** A case with nothing to prepare or clean up. */
+    abstract static class SimpleCase implements Case {
+        @Override
+        public int batchSize() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void before(int thread, int ops) throws Exception {
+        }
+
+        @Override
+        public void after(int thread) throws Exception {
+        }
+    }
+
+    static final long ITERATION_MILLIS = Long.getLong("bench.millis", 200);
+    static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+    private static final int WARMUP_ITERATIONS = 3;
+
+    private Bench() {
+    }
+
+    static void printHeader() {
+        System.out.println(String.format("%-52s %7s %12s %10s %14s %10s",
+                "benchmark", "threads", "ns/op", "+-", "ops/s", "B/op"));
+    }
+
+    /**
+     * Measures {@code c} on {@code threads} threads and prints the result.
+     *
+     * @param others Threads doing work on behalf of the case, whose
+     *            allocations count too.
+     */
+    static void run(String name, int threads, Case c, Thread... others)
+            throws Exception {
+        final Workers workers = new Workers(threads, c);
+        try {
+            int ops = 16;
+            final long target = ITERATION_MILLIS * 1000000L;
+            while (workers.iterate(ops, others).nanos < target
+                    && ops < 1 << 26) {
+                ops *= 2;
+            }
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                workers.iterate(ops, others);
+            }
+            final double[] nanosPerOp = new double[ITERATIONS];
+            double bytes = 0;
+            double total = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                final Iteration it = workers.iterate(ops, others);
+                nanosPerOp[i] = (double) it.nanos / ops;
+                total += it.nanos;
+                bytes += it.bytes;
+            }
+            double mean = 0;
+            for (double v : nanosPerOp) {
+                mean += v;
+            }
+            mean /= ITERATIONS;
+            double variance = 0;
+            for (double v : nanosPerOp) {
+                variance += (v - mean) * (v - mean);
+            }
+            final double error = Math.sqrt(variance / ITERATIONS);
+            final double opsPerSecond = (double) ops * threads * ITERATIONS
+                    / (total / 1e9);
+            final double bytesPerOp = bytes
+                    / ((double) ops * threads * ITERATIONS);
+            System.out.println(String.format(
+                    "%-52s %7d %12.1f %10.1f %14.0f %10.1f", name, threads,
+                    mean, error, opsPerSecond, bytesPerOp));
+        } finally {
+            workers.stop();
+        }
+    }
+
+    private static final class Iteration {
+        long nanos;
+        long bytes;
+    }
+
+    /** Worker threads, kept across the iterations of one run. */
+    private static final class Workers {
+        private final Case mCase;
+        private final Thread[] mThreads;
+        private final CyclicBarrier mBarrier;
+        private final long[] mBytes;
+        private final AtomicReference<Throwable> mError = new AtomicReference<Throwable>();
+        private volatile int mOps;
+        private volatile boolean mStopped;
+
+        Workers(int threads, Case c) {
+            mCase = c;
+            mThreads = new Thread[threads];
+            mBarrier = new CyclicBarrier(threads + 1);
+            mBytes = new long[threads];
+            for (int i = 0; i < threads; i++) {
+                final int index = i;
+                mThreads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        work(index);
+                    }
+                }, "bench-" + i);
+                mThreads[i].setDaemon(true);
+                mThreads[i].start();
+            }
+        }
+
+        private void work(int index) {
+            final Thread self = Thread.currentThread();
+            try {
+                while (true) {
+                    mBarrier.await();
+                    if (mStopped) {
+                        return;
+                    }
+                    final int ops = mOps;
+                    try {
+                        mCase.before(index, ops);
+                    } catch (Throwable t) {
+                        mError.compareAndSet(null, t);
+                    }
+                    mBarrier.await();
+                    final long bytes = Harness.allocatedBytes(self);
+                    try {
+                        mCase.run(index, ops);
+                    } catch (Throwable t) {
+                        mError.compareAndSet(null, t);
+                    }
+                    mBytes[index] = Harness.allocatedBytes(self) - bytes;
+                    mBarrier.await();
+                    try {
+                        mCase.after(index);
+                    } catch (Throwable t) {
+                        mError.compareAndSet(null, t);
+                    }
+                    mBarrier.await();
+                }
+            } catch (Exception e) {
+                // Barrier broken or interrupted: the run is over.
+            }
+        }
+
+        Iteration iterate(int ops, Thread[] others) throws Exception {
+            final Iteration it = new Iteration();
+            final int batch = mCase.batchSize();
+            for (int done = 0; done < ops;) {
+                final int n = Math.min(batch, ops - done);
+                round(n, others, it);
+                done += n;
+            }
+            return it;
+        }
+
+        private void round(int ops, Thread[] others, Iteration it)
+                throws Exception {
+            mOps = ops;
+            mBarrier.await(); // go
+            mBarrier.await(); // prepared
+            long otherBytes = 0;
+            for (Thread t : others) {
+                otherBytes -= Harness.allocatedBytes(t);
+            }
+            final long start = System.nanoTime();
+            mBarrier.await(); // ran
+            it.nanos += System.nanoTime() - start;
+            for (Thread t : others) {
+                otherBytes += Harness.allocatedBytes(t);
+            }
+            mBarrier.await(); // cleaned up
+            it.bytes += otherBytes;
+            for (long b : mBytes) {
+                it.bytes += b;
+            }
+            final Throwable error = mError.get();
+            if (error instanceof Exception) {
+                throw (Exception) error;
+            } else if (error != null) {
+                throw (Error) error;
+            }
+        }
+
+        void stop() throws Exception {
+            mStopped = true;
+            mBarrier.await();
+            for (Thread t : mThreads) {
+                t.join();
+            }
+        }
+    }
+}
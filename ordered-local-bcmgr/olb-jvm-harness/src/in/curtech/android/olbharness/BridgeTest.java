@@ -0,0 +1,367 @@
+package in.curtech.android.olbharness;
+
+import in.curtech.android.common.LocalBroadcastBridge;
+import in.curtech.android.common.LocalBroadcastReceiver;
+import in.curtech.android.common.OrderEnabledLocalBroadcastManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.HandlerThread;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Two managers, each on a Looper of its own, bridged over a pair of pipes as
+ * two processes would be over a LocalSocket. The uid check on sockets is
+ * left out: there are no LocalSockets on a plain JVM.
+ */
+public final class BridgeTest {
+
+    private static final String ACTION = "in.curtech.bridge.ACTION";
+    private static final String EXTRA_SEQUENCE = "sequence";
+    private static final String EXTRA_VALUE = "value";
+
+    private static final int PIPE_SIZE = 64 * 1024;
+    private static final long TIMEOUT_MILLIS = 10000;
+    /** How long to wait for something which must not happen. */
+    private static final long SETTLE_MILLIS = 100;
+
+    /** Keeps what it receives. */
+    static final class RecordingReceiver extends LocalBroadcastReceiver {
+        private final ArrayList<Intent> mReceived = new ArrayList<Intent>();
+
+        @Override
+        public synchronized void onReceive(Context context, Intent intent) {
+            mReceived.add(intent);
+        }
+
+        synchronized int count() {
+            return mReceived.size();
+        }
+
+        synchronized Intent get(int i) {
+            return mReceived.get(i);
+        }
+    }
+
+    /** Cannot be written to a Parcel. */
+    public static final class UnwritableParcelable implements Parcelable {
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            throw new IllegalStateException("Not parcelable");
+        }
+    }
+
+    /** Written, but cannot be read back: it has no CREATOR. */
+    public static final class UnreadableParcelable implements Parcelable {
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            dest.writeInt(42);
+        }
+    }
+
+    /** Holds back reads until opened. */
+    static final class GatedInputStream extends FilterInputStream {
+        private final CountDownLatch mGate = new CountDownLatch(1);
+
+        GatedInputStream(InputStream in) {
+            super(in);
+        }
+
+        void open() {
+            mGate.countDown();
+        }
+
+        @Override
+        public int read() throws IOException {
+            pass();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            pass();
+            return super.read(b, off, len);
+        }
+
+        private void pass() throws IOException {
+            try {
+                mGate.await();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted");
+            }
+        }
+    }
+
+    /**
+     * Managers A and B bridged for {@link #ACTION}, each with a receiver
+     * below its bridge. B's reads from A go through a gate, open unless
+     * asked otherwise.
+     */
+    static final class Fixture {
+        final HandlerThread looperA = Harness.startLooper("bridge-a");
+        final HandlerThread looperB = Harness.startLooper("bridge-b");
+        final OrderEnabledLocalBroadcastManager managerA = OrderEnabledLocalBroadcastManager
+                .create(Harness.CONTEXT, looperA.getLooper());
+        final OrderEnabledLocalBroadcastManager managerB = OrderEnabledLocalBroadcastManager
+                .create(Harness.CONTEXT, looperB.getLooper());
+        final RecordingReceiver receiverA = new RecordingReceiver();
+        final RecordingReceiver receiverB = new RecordingReceiver();
+        final GatedInputStream gate;
+        final LocalBroadcastBridge bridgeA;
+        final LocalBroadcastBridge bridgeB;
+
+        Fixture(boolean gated) throws IOException {
+            final PipedOutputStream outA = new PipedOutputStream();
+            final PipedOutputStream outB = new PipedOutputStream();
+            final PipedInputStream inA = new PipedInputStream(outB, PIPE_SIZE);
+            gate = new GatedInputStream(new PipedInputStream(outA, PIPE_SIZE));
+            if (!gated) {
+                gate.open();
+            }
+            bridgeA = new LocalBroadcastBridge(managerA, new IntentFilter(
+                    ACTION), inA, outA);
+            bridgeB = new LocalBroadcastBridge(managerB, new IntentFilter(
+                    ACTION), gate, outB);
+            final IntentFilter filter = new IntentFilter(ACTION);
+            filter.setPriority(-1);
+            managerA.registerReceiver(receiverA, filter);
+            managerB.registerReceiver(receiverB, filter);
+            bridgeA.start();
+            bridgeB.start();
+        }
+
+        void sendFromA(Intent intent) {
+            managerA.sendOrderedBroadcast(intent);
+        }
+
+        /** Waits until B has received {@code count} broadcasts. */
+        void awaitReceivedByB(final int count) throws InterruptedException {
+            Harness.await(new Harness.Condition() {
+                @Override
+                public boolean holds() {
+                    return receiverB.count() >= count;
+                }
+            }, TIMEOUT_MILLIS);
+            Thread.sleep(SETTLE_MILLIS);
+            Harness.checkEquals(count, receiverB.count(), "Received by B");
+        }
+
+        void close() {
+            gate.open();
+            bridgeA.close();
+            bridgeB.close();
+            looperA.quit();
+            looperB.quit();
+        }
+    }
+
+    private BridgeTest() {
+    }
+
+    public static void main(String[] args) {
+        Harness.runTest("BridgeTest.forward", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                forward();
+            }
+        });
+        Harness.runTest("BridgeTest.unwritable", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                unwritable();
+            }
+        });
+        Harness.runTest("BridgeTest.unreadable", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                unreadable();
+            }
+        });
+        Harness.runTest("BridgeTest.frames", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                frames();
+            }
+        });
+        Harness.runTest("BridgeTest.corrupt", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                corrupt();
+            }
+        });
+    }
+
+    private static Intent newIntent(int sequence) {
+        return new Intent(ACTION).putExtra(EXTRA_SEQUENCE, sequence);
+    }
+
+    /** Checks that B got the broadcasts numbered {@code sequences}, in order. */
+    private static void checkSequences(RecordingReceiver receiver,
+            int... sequences) {
+        Harness.checkEquals(sequences.length, receiver.count(),
+                "Broadcasts received");
+        for (int i = 0; i < sequences.length; i++) {
+            final Intent intent = receiver.get(i);
+            Harness.checkEquals(sequences[i], intent.getIntExtra(
+                    EXTRA_SEQUENCE, -1), "Sequence of broadcast " + i);
+            Harness.check(intent.getBooleanExtra(
+                    LocalBroadcastBridge.EXTRA_FORWARDED, false),
+                    "Broadcast " + i + " not marked as forwarded");
+        }
+    }
+
+    /** Broadcasts reach the peer, marked, and do not come back. */
+    static void forward() throws Exception {
+        final Fixture f = new Fixture(false);
+        try {
+            for (int i = 0; i < 10; i++) {
+                f.sendFromA(newIntent(i));
+            }
+            f.awaitReceivedByB(10);
+            checkSequences(f.receiverB, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+            Harness.checkEquals(10, f.bridgeA.getForwardedCount(),
+                    "Forwarded by A");
+            Harness.checkEquals(10, f.bridgeB.getReceivedCount(),
+                    "Received by B's bridge");
+            Harness.checkEquals(0, f.bridgeB.getForwardedCount(),
+                    "Forwarded back by B");
+            Harness.checkEquals(0, f.bridgeA.getReceivedCount(),
+                    "Received back by A");
+            Harness.checkEquals(10, f.receiverA.count(), "Received by A");
+        } finally {
+            f.close();
+        }
+    }
+
+    /** An Intent which cannot be parcelled is dropped by the writer. */
+    static void unwritable() throws Exception {
+        final Fixture f = new Fixture(false);
+        try {
+            f.sendFromA(newIntent(0));
+            f.sendFromA(newIntent(1).putExtra(EXTRA_VALUE,
+                    new UnwritableParcelable()));
+            f.sendFromA(newIntent(2));
+            f.awaitReceivedByB(2);
+            checkSequences(f.receiverB, 0, 2);
+            Harness.checkEquals(1, f.bridgeA.getRejectedCount(),
+                    "Rejected by A");
+            Harness.checkEquals(0, f.bridgeB.getRejectedCount(),
+                    "Rejected by B");
+            Harness.check(!f.bridgeA.isClosed() && !f.bridgeB.isClosed(),
+                    "Bridge closed");
+        } finally {
+            f.close();
+        }
+    }
+
+    /** An Intent which cannot be read back is dropped by the reader. */
+    static void unreadable() throws Exception {
+        final Fixture f = new Fixture(false);
+        try {
+            f.sendFromA(newIntent(0));
+            f.sendFromA(newIntent(1).putExtra(EXTRA_VALUE,
+                    new UnreadableParcelable()));
+            f.sendFromA(newIntent(2));
+            f.awaitReceivedByB(2);
+            checkSequences(f.receiverB, 0, 2);
+            Harness.checkEquals(0, f.bridgeA.getRejectedCount(),
+                    "Rejected by A");
+            Harness.checkEquals(1, f.bridgeB.getRejectedCount(),
+                    "Rejected by B");
+            Harness.check(!f.bridgeA.isClosed() && !f.bridgeB.isClosed(),
+                    "Bridge closed");
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * An Intent too large for a frame is dropped; a batch too large for one
+     * is split. B's reads are held back until A's writer has them all
+     * queued, so that they go out as one batch; a frame over the limit would
+     * make B close the bridge.
+     */
+    static void frames() throws Exception {
+        final Fixture f = new Fixture(true);
+        try {
+            f.sendFromA(newIntent(0).putExtra(EXTRA_VALUE,
+                    new byte[1024 * 1024]));
+            for (int i = 1; i <= 5; i++) {
+                f.sendFromA(newIntent(i).putExtra(EXTRA_VALUE,
+                        new byte[300 * 1024]));
+            }
+            Harness.check(Harness.await(new Harness.Condition() {
+                @Override
+                public boolean holds() {
+                    return f.receiverA.count() == 6;
+                }
+            }, TIMEOUT_MILLIS), "Broadcasts not dispatched by A");
+            f.gate.open();
+            f.awaitReceivedByB(5);
+            checkSequences(f.receiverB, 1, 2, 3, 4, 5);
+            for (int i = 0; i < 5; i++) {
+                Harness.checkEquals(300 * 1024, f.receiverB.get(i)
+                        .getByteArrayExtra(EXTRA_VALUE).length,
+                        "Extra size of broadcast " + i);
+            }
+            Harness.checkEquals(1, f.bridgeA.getRejectedCount(),
+                    "Rejected by A");
+            Harness.check(!f.bridgeA.isClosed() && !f.bridgeB.isClosed(),
+                    "Bridge closed");
+        } finally {
+            f.close();
+        }
+    }
+
+    /** A frame whose lengths do not add up closes the bridge. */
+    static void corrupt() throws Exception {
+        final HandlerThread looper = Harness.startLooper("bridge");
+        final PipedOutputStream peer = new PipedOutputStream();
+        final LocalBroadcastBridge bridge = new LocalBroadcastBridge(
+                OrderEnabledLocalBroadcastManager.create(Harness.CONTEXT,
+                        looper.getLooper()), new IntentFilter(ACTION),
+                new PipedInputStream(peer, PIPE_SIZE),
+                new ByteArrayOutputStream());
+        try {
+            bridge.start();
+            final DataOutputStream out = new DataOutputStream(peer);
+            // Room for a single Intent length, but five Intents.
+            out.writeInt(8);
+            out.writeInt(5);
+            out.writeInt(0);
+            out.flush();
+            Harness.check(Harness.await(new Harness.Condition() {
+                @Override
+                public boolean holds() {
+                    return bridge.isClosed();
+                }
+            }, TIMEOUT_MILLIS), "Bridge not closed");
+            Harness.checkEquals(0, bridge.getReceivedCount(), "Received");
+        } finally {
+            bridge.close();
+            looper.quit();
+        }
+    }
+}
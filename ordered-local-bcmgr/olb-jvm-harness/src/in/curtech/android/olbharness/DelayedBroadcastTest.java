@@ -0,0 +1,229 @@
+package in.curtech.android.olbharness;
+
+import in.curtech.android.common.LocalBroadcastReceiver;
+import in.curtech.android.common.OrderEnabledLocalBroadcastManager;
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+/**
+ * Delayed broadcasts on a Looper: the order they fire in, cancelling them by
+ * action and by token, a nearer broadcast sent after a farther one, and one
+ * due more than a turn of the timer wheel out.
+ */
+public final class DelayedBroadcastTest {
+
+    private static final String ACTION_A = "in.curtech.delayed.A";
+    private static final String ACTION_B = "in.curtech.delayed.B";
+    private static final String EXTRA_SEQUENCE = "sequence";
+
+    /** A turn of the manager's wheel is 512 ticks of 10 milliseconds. */
+    private static final long TURN_MILLIS = 5120;
+
+    private static final long TIMEOUT_MILLIS = 10000;
+    /** How long to wait for something which must not happen. */
+    private static final long SETTLE_MILLIS = 200;
+
+    /** Keeps the sequence of each broadcast, and when it came. */
+    static final class RecordingReceiver extends LocalBroadcastReceiver {
+        private final ArrayList<Integer> mSequences = new ArrayList<Integer>();
+        private final ArrayList<Long> mTimes = new ArrayList<Long>();
+
+        @Override
+        public synchronized void onReceive(Context context, Intent intent) {
+            mSequences.add(intent.getIntExtra(EXTRA_SEQUENCE, -1));
+            mTimes.add(SystemClock.uptimeMillis());
+        }
+
+        synchronized int count() {
+            return mSequences.size();
+        }
+
+        synchronized int sequence(int i) {
+            return mSequences.get(i);
+        }
+
+        synchronized long time(int i) {
+            return mTimes.get(i);
+        }
+    }
+
+    /** A manager on a Looper of its own, with a receiver for both actions. */
+    static final class Fixture {
+        final HandlerThread looper = Harness.startLooper("delayed");
+        final OrderEnabledLocalBroadcastManager manager = OrderEnabledLocalBroadcastManager
+                .create(Harness.CONTEXT, looper.getLooper());
+        final RecordingReceiver receiver = new RecordingReceiver();
+
+        Fixture() {
+            final IntentFilter filter = new IntentFilter(ACTION_A);
+            filter.addAction(ACTION_B);
+            manager.registerReceiver(receiver, filter);
+        }
+
+        void awaitCount(final int count) throws InterruptedException {
+            Harness.check(Harness.await(new Harness.Condition() {
+                @Override
+                public boolean holds() {
+                    return receiver.count() >= count;
+                }
+            }, TIMEOUT_MILLIS), "Broadcasts not fired");
+        }
+
+        void close() {
+            manager.unregisterAllReceivers();
+            looper.quit();
+        }
+    }
+
+    private DelayedBroadcastTest() {
+    }
+
+    public static void main(String[] args) {
+        Harness.runTest("DelayedBroadcastTest.order", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                order();
+            }
+        });
+        Harness.runTest("DelayedBroadcastTest.cancel", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                cancel();
+            }
+        });
+        Harness.runTest("DelayedBroadcastTest.earlier", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                earlier();
+            }
+        });
+        Harness.runTest("DelayedBroadcastTest.laterTurn", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                laterTurn();
+            }
+        });
+    }
+
+    private static Intent newIntent(String action, int sequence) {
+        return new Intent(action).putExtra(EXTRA_SEQUENCE, sequence);
+    }
+
+    private static void checkSequences(RecordingReceiver receiver,
+            int... sequences) {
+        Harness.checkEquals(sequences.length, receiver.count(),
+                "Broadcasts fired");
+        for (int i = 0; i < sequences.length; i++) {
+            Harness.checkEquals(sequences[i], receiver.sequence(i),
+                    "Sequence of broadcast " + i);
+        }
+    }
+
+    /**
+     * Broadcasts fire by deadline, those due at the same tick in the order
+     * they were sent, and none early.
+     */
+    static void order() throws Exception {
+        final Fixture f = new Fixture();
+        try {
+            final long start = SystemClock.uptimeMillis();
+            f.manager.sendBroadcastDelayed(newIntent(ACTION_A, 0), 80);
+            f.manager.sendBroadcastDelayed(newIntent(ACTION_A, 1), 30);
+            f.manager.sendOrderedBroadcastDelayed(newIntent(ACTION_B, 2), 30);
+            f.manager.sendBroadcastDelayed(newIntent(ACTION_B, 3), 50);
+            f.awaitCount(4);
+            Thread.sleep(SETTLE_MILLIS);
+            checkSequences(f.receiver, 1, 2, 3, 0);
+            final long[] delays = {
+                    30, 30, 50, 80
+            };
+            for (int i = 0; i < delays.length; i++) {
+                Harness.check(f.receiver.time(i) - start >= delays[i],
+                        "Broadcast " + i + " fired after "
+                                + (f.receiver.time(i) - start) + " ms");
+            }
+        } finally {
+            f.close();
+        }
+    }
+
+    /** Cancelled broadcasts never fire, whether by action or by token. */
+    static void cancel() throws Exception {
+        final Fixture f = new Fixture();
+        try {
+            final Object token = new Object();
+            final Object otherToken = new Object();
+            f.manager.sendBroadcastDelayed(newIntent(ACTION_A, 0), 50);
+            f.manager.sendBroadcastDelayed(newIntent(ACTION_B, 1), 50, token);
+            f.manager.sendBroadcastDelayed(newIntent(ACTION_B, 2), 60);
+            f.manager.sendOrderedBroadcastDelayed(newIntent(ACTION_A, 3), 60,
+                    otherToken);
+            f.manager.sendBroadcastDelayed(newIntent(ACTION_B, 4), 70, token);
+            Harness.checkEquals(2, f.manager.cancelDelayedBroadcasts(ACTION_A),
+                    "Cancelled by action");
+            Harness.checkEquals(2, f.manager
+                    .cancelDelayedBroadcastsWithToken(token),
+                    "Cancelled by token");
+            Harness.checkEquals(0, f.manager
+                    .cancelDelayedBroadcastsWithToken(otherToken),
+                    "Cancelled by a token already cancelled by action");
+            f.awaitCount(1);
+            Thread.sleep(SETTLE_MILLIS);
+            checkSequences(f.receiver, 2);
+            Harness.checkEquals(0, f.manager.cancelDelayedBroadcasts(ACTION_B),
+                    "Cancelled after firing");
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * A broadcast due before the tick already posted gets a tick of its
+     * own.
+     */
+    static void earlier() throws Exception {
+        final Fixture f = new Fixture();
+        try {
+            final Object token = new Object();
+            final long start = SystemClock.uptimeMillis();
+            f.manager.sendBroadcastDelayed(newIntent(ACTION_A, 0), 3000, token);
+            f.manager.sendBroadcastDelayed(newIntent(ACTION_A, 1), 50);
+            f.awaitCount(1);
+            final long elapsed = f.receiver.time(0) - start;
+            checkSequences(f.receiver, 1);
+            Harness.check(elapsed < 1000, "Fired after " + elapsed + " ms");
+            Harness.checkEquals(1, f.manager
+                    .cancelDelayedBroadcastsWithToken(token),
+                    "Still pending");
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * A broadcast due more than a turn out shares its slot with ticks of
+     * earlier turns, and must not fire at any of them.
+     */
+    static void laterTurn() throws Exception {
+        final Fixture f = new Fixture();
+        try {
+            final long start = SystemClock.uptimeMillis();
+            f.manager.sendBroadcastDelayed(newIntent(ACTION_A, 0),
+                    TURN_MILLIS + 100);
+            f.manager.sendBroadcastDelayed(newIntent(ACTION_A, 1), 100);
+            f.awaitCount(2);
+            checkSequences(f.receiver, 1, 0);
+            final long elapsed = f.receiver.time(1) - start;
+            Harness.check(elapsed >= TURN_MILLIS + 100, "Fired after "
+                    + elapsed + " ms");
+        } finally {
+            f.close();
+        }
+    }
+}
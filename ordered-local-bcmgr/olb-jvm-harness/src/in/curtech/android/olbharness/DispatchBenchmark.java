@@ -0,0 +1,286 @@
+package in.curtech.android.olbharness;
+
+import in.curtech.android.common.LocalBroadcastReceiver;
+import in.curtech.android.common.OrderEnabledLocalBroadcastManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.HandlerThread;
+
+/**
+ * Baseline for the register/send/dispatch hot paths of
+ * {@link OrderEnabledLocalBroadcastManager}: registerReceiver,
+ * unregisterReceiver, sendBroadcast against sendOrderedBroadcast, and
+ * sendBroadcastSync. Each suite runs for every combination of
+ * {@link #RECEIVERS registered receivers}, {@link #ACTIONS actions per
+ * filter} and {@link #THREADS producer threads}.
+ * <p>
+ * Broadcasts are dispatched on a Looper thread, whose allocations count
+ * towards B/op; send suites wait for the last receiver of each batch, so
+ * ns/op covers dispatch as well. Sent in a burst, more broadcasts are in
+ * flight than the manager pools records for, so the send suites allocate
+ * while sendSync, one broadcast at a time, does not.
+ * <p>
+ * Usage: {@code run.sh bench DispatchBenchmark [suite...]}, with suites among
+ * register, unregister, send, sendOrdered and sendSync.
+ */
+public final class DispatchBenchmark {
+
+    static final int[] RECEIVERS = {
+            1, 10, 100
+    };
+    static final int[] ACTIONS = {
+            1, 10
+    };
+    static final int[] THREADS = {
+            1, 4
+    };
+
+    static final String ACTION_PREFIX = "in.curtech.bench.ACTION_";
+
+    /** Receives and does nothing else. */
+    static final class NopReceiver extends LocalBroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+        }
+    }
+
+    /** Counts what reaches it; registered below every other receiver. */
+    static final class LastReceiver extends LocalBroadcastReceiver {
+        final AtomicLong count = new AtomicLong();
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            count.incrementAndGet();
+        }
+    }
+
+    static IntentFilter newFilter(int actions, int priority) {
+        final IntentFilter filter = new IntentFilter();
+        for (int i = 0; i < actions; i++) {
+            filter.addAction(ACTION_PREFIX + i);
+        }
+        filter.setPriority(priority);
+        return filter;
+    }
+
+    /** A manager on a Looper of its own, with {@code receivers} receivers. */
+    static final class Fixture {
+        final HandlerThread looper = Harness.startLooper("dispatch");
+        final OrderEnabledLocalBroadcastManager manager = OrderEnabledLocalBroadcastManager
+                .create(Harness.CONTEXT, looper.getLooper());
+        final LastReceiver last = new LastReceiver();
+
+        Fixture(int receivers, int actions) {
+            for (int i = 0; i < receivers; i++) {
+                manager.registerReceiver(new NopReceiver(),
+                        newFilter(actions, i));
+            }
+            manager.registerReceiver(last, newFilter(actions,
+                    IntentFilter.SYSTEM_LOW_PRIORITY));
+        }
+
+        void close() {
+            manager.unregisterAllReceivers();
+            looper.quit();
+        }
+    }
+
+    private DispatchBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final List<String> suites = Arrays.asList(args.length > 0 ? args
+                : new String[] {
+                        "register", "unregister", "send", "sendOrdered",
+                        "sendSync"
+                });
+        Bench.printHeader();
+        for (String suite : suites) {
+            for (int receivers : RECEIVERS) {
+                for (int actions : ACTIONS) {
+                    for (int threads : THREADS) {
+                        run(suite, receivers, actions, threads);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void run(String suite, int receivers, int actions,
+            int threads) throws Exception {
+        final Fixture fixture = new Fixture(receivers, actions);
+        try {
+            final Bench.Case c;
+            if (suite.equals("register")) {
+                c = new RegisterCase(fixture.manager, actions, threads, true);
+            } else if (suite.equals("unregister")) {
+                c = new RegisterCase(fixture.manager, actions, threads, false);
+            } else if (suite.equals("send")) {
+                c = new SendCase(fixture, threads, false);
+            } else if (suite.equals("sendOrdered")) {
+                c = new SendCase(fixture, threads, true);
+            } else if (suite.equals("sendSync")) {
+                c = new SendSyncCase(fixture.manager);
+            } else {
+                throw new IllegalArgumentException("Unknown suite: " + suite);
+            }
+            Bench.run(suite + " receivers=" + receivers + " actions="
+                    + actions, threads, c, fixture.looper);
+        } finally {
+            fixture.close();
+        }
+    }
+
+    /**
+     * Registers receivers which are unregistered afterwards, or the other
+     * way round; a few at a time, so that the registry keeps its size.
+     */
+    static final class RegisterCase implements Bench.Case {
+        static final int BATCH_SIZE = 8;
+
+        private final OrderEnabledLocalBroadcastManager mManager;
+        private final int mActions;
+        private final boolean mRegister;
+        private final NopReceiver[][] mReceivers;
+        private final IntentFilter[][] mFilters;
+
+        RegisterCase(OrderEnabledLocalBroadcastManager manager, int actions,
+                int threads, boolean register) {
+            mManager = manager;
+            mActions = actions;
+            mRegister = register;
+            mReceivers = new NopReceiver[threads][];
+            mFilters = new IntentFilter[threads][];
+        }
+
+        @Override
+        public int batchSize() {
+            return BATCH_SIZE;
+        }
+
+        @Override
+        public void before(int thread, int ops) {
+            if (mReceivers[thread] == null
+                    || mReceivers[thread].length != ops) {
+                mReceivers[thread] = new NopReceiver[ops];
+                mFilters[thread] = new IntentFilter[ops];
+                for (int i = 0; i < ops; i++) {
+                    mReceivers[thread][i] = new NopReceiver();
+                    mFilters[thread][i] = newFilter(mActions, i % 100);
+                }
+            }
+            if (!mRegister) {
+                register(thread, ops);
+            }
+        }
+
+        @Override
+        public void run(int thread, int ops) {
+            if (mRegister) {
+                register(thread, ops);
+            } else {
+                unregister(thread, ops);
+            }
+        }
+
+        @Override
+        public void after(int thread) {
+            if (mRegister) {
+                unregister(thread, mReceivers[thread].length);
+            }
+        }
+
+        private void register(int thread, int ops) {
+            final NopReceiver[] receivers = mReceivers[thread];
+            final IntentFilter[] filters = mFilters[thread];
+            for (int i = 0; i < ops; i++) {
+                mManager.registerReceiver(receivers[i], filters[i]);
+            }
+        }
+
+        private void unregister(int thread, int ops) {
+            final NopReceiver[] receivers = mReceivers[thread];
+            for (int i = 0; i < ops; i++) {
+                mManager.unregisterReceiver(receivers[i]);
+            }
+        }
+    }
+
+    /**
+     * Sends broadcasts from every thread and waits until the Looper has
+     * dispatched all of them.
+     */
+    static final class SendCase implements Bench.Case {
+        private final Fixture mFixture;
+        private final int mThreads;
+        private final boolean mOrdered;
+        private final Intent mIntent = new Intent(ACTION_PREFIX + 0);
+        private volatile long mTarget;
+
+        SendCase(Fixture fixture, int threads, boolean ordered) {
+            mFixture = fixture;
+            mThreads = threads;
+            mOrdered = ordered;
+        }
+
+        @Override
+        public void before(int thread, int ops) {
+            if (thread == 0) {
+                mTarget = mFixture.last.count.get() + (long) ops * mThreads;
+            }
+        }
+
+        @Override
+        public void run(int thread, int ops) {
+            final OrderEnabledLocalBroadcastManager manager = mFixture.manager;
+            final Intent intent = mIntent;
+            if (mOrdered) {
+                for (int i = 0; i < ops; i++) {
+                    manager.sendOrderedBroadcast(intent);
+                }
+            } else {
+                for (int i = 0; i < ops; i++) {
+                    manager.sendBroadcast(intent);
+                }
+            }
+            final AtomicLong count = mFixture.last.count;
+            while (count.get() < mTarget) {
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public int batchSize() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void after(int thread) {
+        }
+    }
+
+    /** Sends and dispatches on the calling thread. */
+    static final class SendSyncCase extends Bench.SimpleCase {
+        private final OrderEnabledLocalBroadcastManager mManager;
+        private final Intent mIntent = new Intent(ACTION_PREFIX + 0);
+
+        SendSyncCase(OrderEnabledLocalBroadcastManager manager) {
+            mManager = manager;
+        }
+
+        @Override
+        public void run(int thread, int ops) {
+            final OrderEnabledLocalBroadcastManager manager = mManager;
+            final Intent intent = mIntent;
+            for (int i = 0; i < ops; i++) {
+                manager.sendBroadcastSync(intent);
+            }
+        }
+    }
+}
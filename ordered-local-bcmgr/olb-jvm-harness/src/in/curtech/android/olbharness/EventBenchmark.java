@@ -0,0 +1,123 @@
+package in.curtech.android.olbharness;
+
+import in.curtech.android.common.LocalBroadcastReceiver;
+import in.curtech.android.common.LocalEventReceiver;
+import in.curtech.android.common.OrderEnabledLocalBroadcastManager;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+/**
+ * Typed in-process events against Intent broadcasts carrying the same
+ * payload as extras: a progress update, built anew for every send and read
+ * by every receiver. Both are dispatched on the sending thread, so ns/op and
+ * B/op cover matching, dispatch and the payload itself.
+ * <p>
+ * Usage: {@code run.sh bench EventBenchmark}.
+ */
+public final class EventBenchmark {
+
+    static final int[] RECEIVERS = {
+            1, 10
+    };
+
+    private static final String ACTION = "in.curtech.bench.PROGRESS";
+    private static final String EXTRA_ID = "id";
+    private static final String EXTRA_PROGRESS = "progress";
+
+    /** The payload of an event. */
+    static final class Progress {
+        final String id;
+        final int progress;
+
+        Progress(String _id, int _progress) {
+            id = _id;
+            progress = _progress;
+        }
+    }
+
+    /** Where receivers leave what they read, so it is not optimized away. */
+    static volatile int sSink;
+
+    static final class ProgressEventReceiver extends
+            LocalEventReceiver<Progress> {
+        @Override
+        public void onEvent(Object key, Progress event) {
+            sSink = event.progress + event.id.length();
+        }
+    }
+
+    static final class ProgressReceiver extends LocalBroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            sSink = intent.getIntExtra(EXTRA_PROGRESS, 0)
+                    + intent.getStringExtra(EXTRA_ID).length();
+        }
+    }
+
+    private EventBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Bench.printHeader();
+        for (int receivers : RECEIVERS) {
+            final OrderEnabledLocalBroadcastManager manager = Harness
+                    .newDirectManager();
+            for (int i = 0; i < receivers; i++) {
+                manager.registerEventReceiver(ACTION,
+                        new ProgressEventReceiver(), i);
+                final IntentFilter filter = new IntentFilter(ACTION);
+                filter.setPriority(i);
+                manager.registerReceiver(new ProgressReceiver(), filter);
+            }
+            final String params = " receivers=" + receivers;
+            Bench.run("sendEvent" + params, 1, new SendCase(manager, false,
+                    false));
+            Bench.run("sendBroadcast" + params, 1, new SendCase(manager,
+                    true, false));
+            Bench.run("sendOrderedEvent" + params, 1, new SendCase(manager,
+                    false, true));
+            Bench.run("sendOrderedBroadcast" + params, 1, new SendCase(
+                    manager, true, true));
+            manager.unregisterAllReceivers();
+        }
+    }
+
+    static final class SendCase extends Bench.SimpleCase {
+        private final OrderEnabledLocalBroadcastManager mManager;
+        private final boolean mIntent;
+        private final boolean mOrdered;
+
+        SendCase(OrderEnabledLocalBroadcastManager manager, boolean intent,
+                boolean ordered) {
+            mManager = manager;
+            mIntent = intent;
+            mOrdered = ordered;
+        }
+
+        @Override
+        public void run(int thread, int ops) {
+            final OrderEnabledLocalBroadcastManager manager = mManager;
+            for (int i = 0; i < ops; i++) {
+                if (mIntent) {
+                    final Intent intent = new Intent(ACTION);
+                    intent.putExtra(EXTRA_ID, "download");
+                    intent.putExtra(EXTRA_PROGRESS, i);
+                    if (mOrdered) {
+                        manager.sendOrderedBroadcast(intent);
+                    } else {
+                        manager.sendBroadcast(intent);
+                    }
+                } else {
+                    final Progress event = new Progress("download", i);
+                    if (mOrdered) {
+                        manager.sendOrderedEvent(ACTION, event);
+                    } else {
+                        manager.sendEvent(ACTION, event);
+                    }
+                }
+            }
+        }
+    }
+}
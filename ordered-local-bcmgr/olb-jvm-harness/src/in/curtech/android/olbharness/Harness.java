@@ -0,0 +1,126 @@
+package in.curtech.android.olbharness;
+
+import in.curtech.android.common.OrderEnabledLocalBroadcastManager;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+/**
+ * What the tests and benchmarks share: a Context, managers dispatching on a
+ * Looper thread or on the sending thread, allocation counters and checks.
+ */
+final class Harness {
+
+    private Harness() {
+    }
+
+    /** Stands in for the application context. */
+    static final Context CONTEXT = new Context() {
+        private final ContentResolver mResolver = new ContentResolver();
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public Looper getMainLooper() {
+            return Looper.getMainLooper();
+        }
+
+        @Override
+        public ContentResolver getContentResolver() {
+            return mResolver;
+        }
+    };
+
+    /** Runs tasks on the thread which submits them. */
+    static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    /**
+     * Returns a manager which dispatches on the thread that sends, or on the
+     * one already dispatching if another thread is.
+     */
+    static OrderEnabledLocalBroadcastManager newDirectManager() {
+        return OrderEnabledLocalBroadcastManager.create(CONTEXT, DIRECT);
+    }
+
+    /** Starts a Looper thread called {@code name}. */
+    static HandlerThread startLooper(String name) {
+        final HandlerThread thread = new HandlerThread(name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /** Returns the bytes allocated so far by {@code thread}. */
+    static long allocatedBytes(Thread thread) {
+        return THREADS.getThreadAllocatedBytes(thread.getId());
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static void checkEquals(long expected, long actual, String what) {
+        if (expected != actual) {
+            throw new AssertionError(what + ": expected " + expected
+                    + ", got " + actual);
+        }
+    }
+
+    /**
+     * Waits up to {@code millis} for {@code condition} to hold.
+     *
+     * @return Whether it did.
+     */
+    static boolean await(Condition condition, long millis)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + millis;
+        while (!condition.holds()) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    interface Condition {
+        boolean holds();
+    }
+
+    interface Body {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs a test case: prints PASS, or FAIL and the stack trace and exits
+     * with status 1.
+     */
+    static void runTest(String name, Body body) {
+        try {
+            body.run();
+        } catch (Throwable t) {
+            System.out.println("FAIL " + name);
+            t.printStackTrace(System.out);
+            System.exit(1);
+        }
+        System.out.println("PASS " + name);
+    }
+}
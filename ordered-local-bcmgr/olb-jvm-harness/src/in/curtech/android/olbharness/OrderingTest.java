@@ -0,0 +1,213 @@
+package in.curtech.android.olbharness;
+
+import in.curtech.android.common.LocalBroadcastReceiver;
+import in.curtech.android.common.LocalEventReceiver;
+import in.curtech.android.common.OrderEnabledLocalBroadcastManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.HandlerThread;
+
+/**
+ * The order receivers run in: by descending priority, and among the same
+ * priority the most recently registered first, for ordered broadcasts and
+ * ordered events alike. Other broadcasts reach receivers in registration
+ * order, whatever their priority.
+ */
+public final class OrderingTest {
+
+    private static final String ACTION = "in.curtech.ordering.ACTION";
+
+    /** Where the receivers of a case write their names, in the order run. */
+    static final class RunLog {
+        private final ArrayList<String> mNames = new ArrayList<String>();
+
+        synchronized void add(String name) {
+            mNames.add(name);
+        }
+
+        synchronized List<String> names() {
+            return new ArrayList<String>(mNames);
+        }
+    }
+
+    static final class NamedReceiver extends LocalBroadcastReceiver {
+        private final String mName;
+        private final RunLog mLog;
+
+        NamedReceiver(String name, RunLog log) {
+            mName = name;
+            mLog = log;
+        }
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            mLog.add(mName);
+        }
+    }
+
+    static final class NamedEventReceiver extends LocalEventReceiver<Object> {
+        private final String mName;
+        private final RunLog mLog;
+
+        NamedEventReceiver(String name, RunLog log) {
+            mName = name;
+            mLog = log;
+        }
+
+        @Override
+        public void onEvent(Object key, Object event) {
+            mLog.add(mName);
+        }
+    }
+
+    private OrderingTest() {
+    }
+
+    public static void main(String[] args) {
+        Harness.runTest("OrderingTest.orderedBroadcast", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                orderedBroadcast();
+            }
+        });
+        Harness.runTest("OrderingTest.orderedEvent", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                orderedEvent();
+            }
+        });
+        Harness.runTest("OrderingTest.broadcast", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                broadcast();
+            }
+        });
+        Harness.runTest("OrderingTest.wildcards", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                wildcards();
+            }
+        });
+    }
+
+    private static void registerReceiver(
+            OrderEnabledLocalBroadcastManager manager, String name,
+            int priority, RunLog log) {
+        registerReceiver(manager, name, ACTION, priority, log);
+    }
+
+    private static void registerReceiver(
+            OrderEnabledLocalBroadcastManager manager, String name,
+            String action, int priority, RunLog log) {
+        final IntentFilter filter = new IntentFilter(action);
+        filter.setPriority(priority);
+        manager.registerReceiver(new NamedReceiver(name, log), filter);
+    }
+
+    /**
+     * Registers receivers of mixed priorities for {@link #ACTION}: z1, z2,
+     * high, z3 and low, in that order.
+     */
+    private static void registerMixed(
+            OrderEnabledLocalBroadcastManager manager, RunLog log) {
+        registerReceiver(manager, "z1", 0, log);
+        registerReceiver(manager, "z2", 0, log);
+        registerReceiver(manager, "high", 1, log);
+        registerReceiver(manager, "z3", 0, log);
+        registerReceiver(manager, "low", -1, log);
+    }
+
+    private static void checkOrder(RunLog log, String... expected) {
+        final List<String> names = log.names();
+        Harness.check(names.equals(Arrays.asList(expected)), "Ran " + names
+                + ", expected " + Arrays.asList(expected));
+    }
+
+    static void orderedBroadcast() {
+        final OrderEnabledLocalBroadcastManager manager = Harness
+                .newDirectManager();
+        final RunLog log = new RunLog();
+        registerMixed(manager, log);
+        manager.sendOrderedBroadcast(new Intent(ACTION));
+        checkOrder(log, "high", "z3", "z2", "z1", "low");
+    }
+
+    /**
+     * Sent the other way, or synchronously, the same receivers run in
+     * registration order; also when the match for an ordered broadcast is
+     * cached already.
+     */
+    static void broadcast() {
+        final OrderEnabledLocalBroadcastManager manager = Harness
+                .newDirectManager();
+        final RunLog log = new RunLog();
+        registerMixed(manager, log);
+        manager.sendBroadcast(new Intent(ACTION));
+        checkOrder(log, "z1", "z2", "high", "z3", "low");
+
+        final RunLog syncLog = new RunLog();
+        final HandlerThread looper = Harness.startLooper("ordering");
+        try {
+            final OrderEnabledLocalBroadcastManager looperManager = OrderEnabledLocalBroadcastManager
+                    .create(Harness.CONTEXT, looper.getLooper());
+            registerMixed(looperManager, syncLog);
+            looperManager.sendOrderedBroadcastSync(new Intent(ACTION));
+            looperManager.sendBroadcastSync(new Intent(ACTION));
+            checkOrder(syncLog, "high", "z3", "z2", "z1", "low", "z1", "z2",
+                    "high", "z3", "low");
+        } finally {
+            looper.quit();
+        }
+    }
+
+    /**
+     * Receivers listed under several keys, their own action and wildcards,
+     * are merged back into one order either way.
+     */
+    static void wildcards() {
+        final OrderEnabledLocalBroadcastManager manager = Harness
+                .newDirectManager();
+        final RunLog log = new RunLog();
+        registerReceiver(manager, "any", "*", 0, log);
+        registerReceiver(manager, "exact", ACTION, 0, log);
+        registerReceiver(manager, "prefix", "in.curtech.*", 5, log);
+        registerReceiver(manager, "exact2", ACTION, 0, log);
+        manager.sendBroadcast(new Intent(ACTION));
+        checkOrder(log, "any", "exact", "prefix", "exact2");
+
+        final RunLog orderedLog = new RunLog();
+        final OrderEnabledLocalBroadcastManager orderedManager = Harness
+                .newDirectManager();
+        registerReceiver(orderedManager, "any", "*", 0, orderedLog);
+        registerReceiver(orderedManager, "exact", ACTION, 0, orderedLog);
+        registerReceiver(orderedManager, "prefix", "in.curtech.*", 5,
+                orderedLog);
+        registerReceiver(orderedManager, "exact2", ACTION, 0, orderedLog);
+        orderedManager.sendOrderedBroadcast(new Intent(ACTION));
+        checkOrder(orderedLog, "prefix", "exact2", "exact", "any");
+    }
+
+    static void orderedEvent() {
+        final OrderEnabledLocalBroadcastManager manager = Harness
+                .newDirectManager();
+        final RunLog log = new RunLog();
+        manager.registerEventReceiver(ACTION, new NamedEventReceiver("e1",
+                log), 0);
+        manager.registerEventReceiver(ACTION, new NamedEventReceiver("e2",
+                log), 0);
+        manager.registerEventReceiver(ACTION, new NamedEventReceiver("high",
+                log), 1);
+        manager.registerEventReceiver(ACTION, new NamedEventReceiver("e3",
+                log), 0);
+        manager.registerEventReceiver(ACTION, new NamedEventReceiver("low",
+                log), -1);
+        manager.sendOrderedEvent(ACTION, new Object());
+        checkOrder(log, "high", "e3", "e2", "e1", "low");
+    }
+}
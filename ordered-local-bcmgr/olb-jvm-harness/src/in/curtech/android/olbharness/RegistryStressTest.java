@@ -0,0 +1,206 @@
+package in.curtech.android.olbharness;
+
+import in.curtech.android.common.LocalBroadcastReceiver;
+import in.curtech.android.common.OrderEnabledLocalBroadcastManager;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.HandlerThread;
+
+/**
+ * Sends from many threads at once, through sendBroadcast,
+ * sendOrderedBroadcast and sendBroadcastSync, while another thread keeps
+ * registering and unregistering receivers for the same action. Every
+ * receiver registered throughout must get every broadcast exactly once.
+ */
+public final class RegistryStressTest {
+
+    private static final String ACTION = "in.curtech.stress.ACTION";
+    private static final String EXTRA_PRODUCER = "producer";
+    private static final String EXTRA_SEQUENCE = "sequence";
+
+    private static final int PRODUCERS = 8;
+    private static final int BROADCASTS = 20000;
+    private static final int RECEIVERS = 16;
+
+    /** Remembers which broadcasts it got; fails on a duplicate. */
+    static final class RecordingReceiver extends LocalBroadcastReceiver {
+        private final BitSet[] mSeen = new BitSet[PRODUCERS];
+        private int mCount;
+        private String mError;
+
+        RecordingReceiver() {
+            for (int i = 0; i < PRODUCERS; i++) {
+                mSeen[i] = new BitSet(BROADCASTS);
+            }
+        }
+
+        @Override
+        public synchronized void onReceive(Context context, Intent intent) {
+            final int producer = intent.getIntExtra(EXTRA_PRODUCER, -1);
+            final int sequence = intent.getIntExtra(EXTRA_SEQUENCE, -1);
+            if (mSeen[producer].get(sequence)) {
+                if (mError == null) {
+                    mError = "Duplicate delivery of " + producer + "/"
+                            + sequence;
+                }
+                return;
+            }
+            mSeen[producer].set(sequence);
+            mCount++;
+        }
+
+        synchronized int count() {
+            return mCount;
+        }
+
+        synchronized String error() {
+            return mError;
+        }
+    }
+
+    /** Registered and unregistered over and over. */
+    static final class ChurnReceiver extends LocalBroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+        }
+    }
+
+    private RegistryStressTest() {
+    }
+
+    public static void main(String[] args) {
+        Harness.runTest("RegistryStressTest.looper", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                final HandlerThread looper = Harness.startLooper("stress");
+                try {
+                    stress(OrderEnabledLocalBroadcastManager.create(
+                            Harness.CONTEXT, looper.getLooper()));
+                } finally {
+                    looper.quit();
+                }
+            }
+        });
+        Harness.runTest("RegistryStressTest.direct", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                stress(Harness.newDirectManager());
+            }
+        });
+    }
+
+    static void stress(final OrderEnabledLocalBroadcastManager manager)
+            throws Exception {
+        final RecordingReceiver[] receivers = new RecordingReceiver[RECEIVERS];
+        for (int i = 0; i < RECEIVERS; i++) {
+            receivers[i] = new RecordingReceiver();
+            final IntentFilter filter = new IntentFilter(ACTION);
+            filter.setPriority(i % 4);
+            manager.registerReceiver(receivers[i], filter);
+        }
+
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(PRODUCERS);
+        final Thread churn = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final ChurnReceiver[] churners = new ChurnReceiver[8];
+                for (int i = 0; i < churners.length; i++) {
+                    churners[i] = new ChurnReceiver();
+                }
+                int i = 0;
+                while (done.getCount() > 0) {
+                    final ChurnReceiver r = churners[i++ % churners.length];
+                    final IntentFilter filter = new IntentFilter(ACTION);
+                    filter.setPriority(i % 5 - 2);
+                    manager.registerReceiver(r, filter);
+                    if (i % 3 == 0) {
+                        manager.unregisterReceiver(churners[(i + 4)
+                                % churners.length]);
+                    }
+                }
+            }
+        }, "churn");
+        churn.start();
+
+        final ArrayList<Thread> producers = new ArrayList<Thread>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            final Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int s = 0; s < BROADCASTS; s++) {
+                            final Intent intent = new Intent(ACTION);
+                            intent.putExtra(EXTRA_PRODUCER, producer);
+                            intent.putExtra(EXTRA_SEQUENCE, s);
+                            switch (s % 3) {
+                                case 0:
+                                    manager.sendBroadcast(intent);
+                                    break;
+                                case 1:
+                                    manager.sendOrderedBroadcast(intent);
+                                    break;
+                                default:
+                                    manager.sendBroadcastSync(intent);
+                                    break;
+                            }
+                        }
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "producer-" + p);
+            producers.add(t);
+            t.start();
+        }
+        for (Thread t : producers) {
+            t.join();
+        }
+        churn.join();
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+
+        final int expected = PRODUCERS * BROADCASTS;
+        final boolean delivered = Harness.await(new Harness.Condition() {
+            @Override
+            public boolean holds() {
+                for (RecordingReceiver r : receivers) {
+                    if (r.count() < expected) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }, 30000);
+        for (int i = 0; i < RECEIVERS; i++) {
+            final String duplicate = receivers[i].error();
+            Harness.check(duplicate == null, "Receiver " + i + ": "
+                    + duplicate);
+        }
+        if (!delivered) {
+            for (int i = 0; i < RECEIVERS; i++) {
+                Harness.checkEquals(expected, receivers[i].count(),
+                        "Broadcasts delivered to receiver " + i);
+            }
+        }
+        // Nothing may trickle in late either.
+        Thread.sleep(50);
+        for (int i = 0; i < RECEIVERS; i++) {
+            Harness.checkEquals(expected, receivers[i].count(),
+                    "Broadcasts delivered to receiver " + i);
+            Harness.check(receivers[i].error() == null, "Receiver " + i
+                    + ": " + receivers[i].error());
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package in.curtech.android.olbharness;
+
+import in.curtech.android.common.LocalBroadcastReceiver;
+import in.curtech.android.common.LocalResultReceiver;
+import in.curtech.android.common.OrderEnabledLocalBroadcastManager;
+import in.curtech.android.common.PendingLocalResult;
+import in.curtech.android.olbharness.DispatchBenchmark.LastReceiver;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+/**
+ * Ordered broadcasts carrying a result to a {@link LocalResultReceiver}, and
+ * receivers deferring them: finishing from within onReceive, finishing from
+ * another thread while the chain waits, and consuming while deferred.
+ */
+public final class ResultTest {
+
+    private static final String ACTION = "in.curtech.result.ACTION";
+    private static final String OTHER_ACTION = "in.curtech.result.OTHER";
+
+    private static final long TIMEOUT_MILLIS = 10000;
+    /** How long a deferred receiver keeps the chain waiting. */
+    private static final long DEFER_MILLIS = 50;
+    private static final int RACES = 2000;
+
+    /** Keeps the last result it got, and on which thread. */
+    static final class RecordingResultReceiver implements LocalResultReceiver {
+        private int mCount;
+        private int mCode;
+        private String mData;
+        private Thread mThread;
+
+        @Override
+        public synchronized void onResult(Intent intent, int resultCode,
+                String resultData, Bundle resultExtras) {
+            mCount++;
+            mCode = resultCode;
+            mData = resultData;
+            mThread = Thread.currentThread();
+        }
+
+        synchronized int count() {
+            return mCount;
+        }
+
+        synchronized int code() {
+            return mCode;
+        }
+
+        synchronized String data() {
+            return mData;
+        }
+
+        synchronized Thread thread() {
+            return mThread;
+        }
+
+        void await(final int count) throws InterruptedException {
+            Harness.check(Harness.await(new Harness.Condition() {
+                @Override
+                public boolean holds() {
+                    return count() >= count;
+                }
+            }, TIMEOUT_MILLIS), "Result receiver not called");
+        }
+    }
+
+    /** Adds one to the result code, and counts the broadcasts it gets. */
+    static final class IncrementReceiver extends LocalBroadcastReceiver {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            count.incrementAndGet();
+            setLocalResultCode(getLocalResultCode() + 1);
+        }
+    }
+
+    /**
+     * A manager on a Looper of its own, with an {@link IncrementReceiver}
+     * below the receiver under test.
+     */
+    static final class Fixture {
+        final HandlerThread looper = Harness.startLooper("result");
+        final OrderEnabledLocalBroadcastManager manager = OrderEnabledLocalBroadcastManager
+                .create(Harness.CONTEXT, looper.getLooper());
+        final IncrementReceiver last = new IncrementReceiver();
+        final RecordingResultReceiver result = new RecordingResultReceiver();
+
+        Fixture(LocalBroadcastReceiver first) {
+            final IntentFilter filter = new IntentFilter(ACTION);
+            filter.setPriority(1);
+            manager.registerReceiver(first, filter);
+            manager.registerReceiver(last, new IntentFilter(ACTION));
+        }
+
+        void send(int initialCode) {
+            manager.sendOrderedBroadcast(new Intent(ACTION), result, null,
+                    initialCode, null, null);
+        }
+
+        void close() {
+            manager.unregisterAllReceivers();
+            looper.quit();
+        }
+    }
+
+    private ResultTest() {
+    }
+
+    public static void main(String[] args) {
+        Harness.runTest("ResultTest.chain", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                chain();
+            }
+        });
+        Harness.runTest("ResultTest.scheduler", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                scheduler();
+            }
+        });
+        Harness.runTest("ResultTest.finishInOnReceive", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                finishInOnReceive();
+            }
+        });
+        Harness.runTest("ResultTest.finishLater", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                finishLater();
+            }
+        });
+        Harness.runTest("ResultTest.consumeWhileDeferred", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                consumeWhileDeferred();
+            }
+        });
+        Harness.runTest("ResultTest.finishRace", new Harness.Body() {
+            @Override
+            public void run() throws Exception {
+                finishRace();
+            }
+        });
+    }
+
+    /**
+     * The result goes down the chain, and reaches the result receiver on the
+     * dispatch thread when no scheduler is given.
+     */
+    static void chain() throws Exception {
+        final Fixture f = new Fixture(new LocalBroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                setLocalResult(getLocalResultCode() * 10, "first", null);
+            }
+        });
+        try {
+            f.send(4);
+            f.result.await(1);
+            Harness.checkEquals(41, f.result.code(), "Result code");
+            Harness.check("first".equals(f.result.data()), "Result data "
+                    + f.result.data());
+            Harness.check(f.result.thread() == f.looper, "Result ran on "
+                    + f.result.thread());
+        } finally {
+            f.close();
+        }
+    }
+
+    /** The result receiver runs on the scheduler's thread, or executor's. */
+    static void scheduler() throws Exception {
+        final Fixture f = new Fixture(new IncrementReceiver());
+        final HandlerThread scheduler = Harness.startLooper("scheduler");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            f.manager.sendOrderedBroadcast(new Intent(ACTION), f.result,
+                    new Handler(scheduler.getLooper()), 0, null, null);
+            f.result.await(1);
+            Harness.checkEquals(2, f.result.code(), "Result code");
+            Harness.check(f.result.thread() == scheduler, "Result ran on "
+                    + f.result.thread());
+
+            f.manager.sendOrderedBroadcastOnExecutor(new Intent(ACTION),
+                    f.result, executor, 10, null, null);
+            f.result.await(2);
+            Harness.checkEquals(12, f.result.code(), "Result code");
+            Harness.check(f.result.thread() != f.looper
+                    && f.result.thread() != scheduler, "Result ran on "
+                    + f.result.thread());
+        } finally {
+            executor.shutdown();
+            scheduler.quit();
+            f.close();
+        }
+    }
+
+    /** Finished before onReceive returns, the chain carries on at once. */
+    static void finishInOnReceive() throws Exception {
+        final Fixture f = new Fixture(new LocalBroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final PendingLocalResult pending = deferBroadcast();
+                pending.setResultCode(pending.getResultCode() + 100);
+                pending.finish();
+            }
+        });
+        try {
+            f.send(0);
+            f.result.await(1);
+            Harness.checkEquals(101, f.result.code(), "Result code");
+            Harness.checkEquals(1, f.last.count.get(), "Next receiver runs");
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * Finished from another thread, the chain waits for it without holding
+     * up other broadcasts.
+     */
+    static void finishLater() throws Exception {
+        final AtomicInteger lastBeforeFinish = new AtomicInteger(-1);
+        final LastReceiver other = new LastReceiver();
+        final AtomicLong otherBeforeFinish = new AtomicLong(-1);
+        final Fixture[] fixture = new Fixture[1];
+        final Fixture f = new Fixture(new LocalBroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final PendingLocalResult pending = deferBroadcast();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(DEFER_MILLIS);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        lastBeforeFinish.set(fixture[0].last.count.get());
+                        otherBeforeFinish.set(other.count.get());
+                        pending.setResultData("later");
+                        pending.setResultCode(pending.getResultCode() + 100);
+                        pending.finish();
+                    }
+                }, "finisher").start();
+            }
+        });
+        fixture[0] = f;
+        try {
+            f.manager.registerReceiver(other, new IntentFilter(OTHER_ACTION));
+            f.send(0);
+            f.manager.sendBroadcast(new Intent(OTHER_ACTION));
+            f.result.await(1);
+            Harness.checkEquals(0, lastBeforeFinish.get(),
+                    "Next receiver run before finish");
+            Harness.checkEquals(1, otherBeforeFinish.get(),
+                    "Other broadcasts dispatched while deferred");
+            Harness.checkEquals(101, f.result.code(), "Result code");
+            Harness.check("later".equals(f.result.data()), "Result data "
+                    + f.result.data());
+            Harness.checkEquals(1, f.last.count.get(), "Next receiver runs");
+            Harness.check(f.result.thread() == f.looper, "Result ran on "
+                    + f.result.thread());
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * Consumed through its PendingLocalResult, the broadcast skips the rest
+     * of the chain but still reaches the result receiver.
+     */
+    static void consumeWhileDeferred() throws Exception {
+        final Fixture f = new Fixture(new LocalBroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final PendingLocalResult pending = deferBroadcast();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        pending.setResultCode(7);
+                        pending.consumeBroadcast();
+                        pending.finish();
+                    }
+                }, "finisher").start();
+            }
+        });
+        try {
+            f.send(0);
+            f.result.await(1);
+            Thread.sleep(DEFER_MILLIS);
+            Harness.checkEquals(7, f.result.code(), "Result code");
+            Harness.checkEquals(0, f.last.count.get(), "Next receiver runs");
+            Harness.checkEquals(1, f.result.count(), "Results");
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * Finished on another thread right away, racing onReceive's return:
+     * whichever wins, the rest of the chain and the result receiver run
+     * exactly once, and a second finish is refused.
+     */
+    static void finishRace() throws Exception {
+        final ExecutorService finisher = Executors.newSingleThreadExecutor();
+        final AtomicInteger refused = new AtomicInteger();
+        final Fixture f = new Fixture(new LocalBroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final PendingLocalResult pending = deferBroadcast();
+                finisher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        pending.setResultCode(pending.getResultCode() + 100);
+                        pending.finish();
+                        try {
+                            pending.finish();
+                        } catch (IllegalStateException e) {
+                            refused.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        });
+        try {
+            for (int i = 0; i < RACES; i++) {
+                f.send(0);
+            }
+            f.result.await(RACES);
+            finisher.shutdown();
+            Thread.sleep(DEFER_MILLIS);
+            Harness.checkEquals(RACES, f.result.count(), "Results");
+            Harness.checkEquals(RACES, f.last.count.get(), "Next receiver runs");
+            Harness.checkEquals(RACES, refused.get(), "Second finish refused");
+            Harness.checkEquals(101, f.result.code(), "Result code");
+        } finally {
+            f.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package in.curtech.android.olbharness;
+
+import in.curtech.android.common.LocalBroadcastReceiver;
+import in.curtech.android.common.OrderEnabledLocalBroadcastManager;
+import in.curtech.android.olbharness.DispatchBenchmark.NopReceiver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.content.IntentFilter;
+
+/**
+ * unregisterReceiver against the number of receivers registered for the
+ * same actions: the manager's indexed removal next to the scan it replaced,
+ * which walked every action list of the receiver's filters and removed
+ * matches one at a time.
+ * <p>
+ * Usage: {@code run.sh bench UnregisterBenchmark}.
+ */
+public final class UnregisterBenchmark {
+
+    static final int[] REGISTERED = {
+            100, 1000, 5000
+    };
+    static final int[] ACTIONS = {
+            1, 10
+    };
+
+    private UnregisterBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Bench.printHeader();
+        for (int actions : ACTIONS) {
+            for (int registered : REGISTERED) {
+                final OrderEnabledLocalBroadcastManager manager = Harness
+                        .newDirectManager();
+                final ScanRegistry scan = new ScanRegistry();
+                for (int i = 0; i < registered; i++) {
+                    final IntentFilter filter = DispatchBenchmark.newFilter(
+                            actions, i % 10);
+                    final NopReceiver receiver = new NopReceiver();
+                    manager.registerReceiver(receiver, filter);
+                    scan.registerReceiver(receiver, filter);
+                }
+                final String params = " registered=" + registered
+                        + " actions=" + actions;
+                Bench.run("indexed" + params, 1, new UnregisterCase(actions) {
+                    @Override
+                    void register(NopReceiver receiver, IntentFilter filter) {
+                        manager.registerReceiver(receiver, filter);
+                    }
+
+                    @Override
+                    void unregister(NopReceiver receiver) {
+                        manager.unregisterReceiver(receiver);
+                    }
+                });
+                Bench.run("scan" + params, 1, new UnregisterCase(actions) {
+                    @Override
+                    void register(NopReceiver receiver, IntentFilter filter) {
+                        scan.registerReceiver(receiver, filter);
+                    }
+
+                    @Override
+                    void unregister(NopReceiver receiver) {
+                        scan.unregisterReceiver(receiver);
+                    }
+                });
+                manager.unregisterAllReceivers();
+            }
+        }
+    }
+
+    /**
+     * Registers a few receivers on top of those already there, then measures
+     * unregistering them.
+     */
+    abstract static class UnregisterCase implements Bench.Case {
+        private static final int BATCH_SIZE = 8;
+
+        private final NopReceiver[] mReceivers = new NopReceiver[BATCH_SIZE];
+        private final IntentFilter[] mFilters = new IntentFilter[BATCH_SIZE];
+
+        UnregisterCase(int actions) {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                mReceivers[i] = new NopReceiver();
+                mFilters[i] = DispatchBenchmark.newFilter(actions, i);
+            }
+        }
+
+        abstract void register(NopReceiver receiver, IntentFilter filter);
+
+        abstract void unregister(NopReceiver receiver);
+
+        @Override
+        public int batchSize() {
+            return BATCH_SIZE;
+        }
+
+        @Override
+        public void before(int thread, int ops) {
+            for (int i = 0; i < ops; i++) {
+                register(mReceivers[i], mFilters[i]);
+            }
+        }
+
+        @Override
+        public void run(int thread, int ops) {
+            for (int i = 0; i < ops; i++) {
+                unregister(mReceivers[i]);
+            }
+        }
+
+        @Override
+        public void after(int thread) {
+        }
+    }
+
+    /** The registry as it was before unregistering was indexed. */
+    static final class ScanRegistry {
+        private static final class Record {
+            final LocalBroadcastReceiver receiver;
+
+            Record(LocalBroadcastReceiver _receiver) {
+                receiver = _receiver;
+            }
+        }
+
+        private final HashMap<LocalBroadcastReceiver, ArrayList<IntentFilter>> mReceivers = new HashMap<LocalBroadcastReceiver, ArrayList<IntentFilter>>();
+        private final HashMap<String, ArrayList<Record>> mActions = new HashMap<String, ArrayList<Record>>();
+
+        void registerReceiver(LocalBroadcastReceiver receiver,
+                IntentFilter filter) {
+            final Record entry = new Record(receiver);
+            ArrayList<IntentFilter> filters = mReceivers.get(receiver);
+            if (filters == null) {
+                filters = new ArrayList<IntentFilter>(1);
+                mReceivers.put(receiver, filters);
+            }
+            filters.add(filter);
+            for (int i = 0; i < filter.countActions(); i++) {
+                final String action = filter.getAction(i);
+                ArrayList<Record> entries = mActions.get(action);
+                if (entries == null) {
+                    entries = new ArrayList<Record>(1);
+                    mActions.put(action, entries);
+                }
+                entries.add(entry);
+            }
+        }
+
+        void unregisterReceiver(LocalBroadcastReceiver receiver) {
+            final ArrayList<IntentFilter> filters = mReceivers.remove(receiver);
+            if (filters == null) {
+                return;
+            }
+            for (int i = 0; i < filters.size(); i++) {
+                final IntentFilter filter = filters.get(i);
+                for (int j = 0; j < filter.countActions(); j++) {
+                    final String action = filter.getAction(j);
+                    final ArrayList<Record> receivers = mActions.get(action);
+                    if (receivers != null) {
+                        for (int k = 0; k < receivers.size(); k++) {
+                            if (receivers.get(k).receiver == receiver) {
+                                receivers.remove(k);
+                                k--;
+                            }
+                        }
+                        if (receivers.size() <= 0) {
+                            mActions.remove(action);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
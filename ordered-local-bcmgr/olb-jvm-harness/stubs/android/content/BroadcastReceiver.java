@@ -0,0 +1,9 @@
+package android.content;
+
+/**
+ * JVM stand-in for {@code android.content.BroadcastReceiver}.
+ */
+public abstract class BroadcastReceiver {
+
+    public abstract void onReceive(Context context, Intent intent);
+}
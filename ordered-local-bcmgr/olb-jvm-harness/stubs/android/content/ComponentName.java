@@ -0,0 +1,55 @@
+package android.content;
+
+/**
+ * JVM stand-in for {@code android.content.ComponentName}.
+ */
+public final class ComponentName {
+
+    private final String mPackage;
+    private final String mClass;
+
+    public ComponentName(String pkg, String cls) {
+        mPackage = pkg;
+        mClass = cls;
+    }
+
+    public String getPackageName() {
+        return mPackage;
+    }
+
+    public String getClassName() {
+        return mClass;
+    }
+
+    public String flattenToString() {
+        return mPackage + "/" + mClass;
+    }
+
+    public static ComponentName unflattenFromString(String str) {
+        final int sep = str.indexOf('/');
+        if (sep < 0 || sep + 1 >= str.length()) {
+            return null;
+        }
+        return new ComponentName(str.substring(0, sep),
+                str.substring(sep + 1));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ComponentName)) {
+            return false;
+        }
+        final ComponentName other = (ComponentName) o;
+        return mPackage.equals(other.mPackage) && mClass.equals(other.mClass);
+    }
+
+    @Override
+    public int hashCode() {
+        return mPackage.hashCode() + mClass.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentName{" + flattenToString() + "}";
+    }
+}
@@ -0,0 +1,14 @@
+package android.content;
+
+import android.net.Uri;
+
+/**
+ * JVM stand-in for {@code android.content.ContentResolver}; there are no
+ * providers to ask.
+ */
+public class ContentResolver {
+
+    public String getType(Uri url) {
+        return null;
+    }
+}
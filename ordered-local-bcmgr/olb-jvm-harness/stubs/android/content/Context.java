@@ -0,0 +1,16 @@
+package android.content;
+
+import android.os.Looper;
+
+/**
+ * JVM stand-in for {@code android.content.Context}, with what
+ * OrderEnabledLocalBroadcastManager uses of it.
+ */
+public abstract class Context {
+
+    public abstract Context getApplicationContext();
+
+    public abstract Looper getMainLooper();
+
+    public abstract ContentResolver getContentResolver();
+}
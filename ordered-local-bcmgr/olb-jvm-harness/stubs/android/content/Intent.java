@@ -0,0 +1,355 @@
+package android.content;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * JVM stand-in for {@code android.content.Intent}: action, data, type,
+ * categories, flags, component and extras, parcelled the way the bridge
+ * needs.
+ */
+public class Intent implements Parcelable {
+
+    public static final int FLAG_DEBUG_LOG_RESOLUTION = 0x00000008;
+
+    private String mAction;
+    private Uri mData;
+    private String mType;
+    private int mFlags;
+    private ComponentName mComponent;
+    private HashSet<String> mCategories;
+    private Bundle mExtras;
+
+    public Intent() {
+    }
+
+    public Intent(String action) {
+        mAction = action;
+    }
+
+    public Intent(String action, Uri uri) {
+        mAction = action;
+        mData = uri;
+    }
+
+    public Intent(Intent o) {
+        mAction = o.mAction;
+        mData = o.mData;
+        mType = o.mType;
+        mFlags = o.mFlags;
+        mComponent = o.mComponent;
+        if (o.mCategories != null) {
+            mCategories = new HashSet<String>(o.mCategories);
+        }
+        if (o.mExtras != null) {
+            mExtras = new Bundle(o.mExtras);
+        }
+    }
+
+    protected Intent(Parcel in) {
+        readFromParcel(in);
+    }
+
+    public String getAction() {
+        return mAction;
+    }
+
+    public Intent setAction(String action) {
+        mAction = action;
+        return this;
+    }
+
+    public Uri getData() {
+        return mData;
+    }
+
+    public Intent setData(Uri data) {
+        mData = data;
+        mType = null;
+        return this;
+    }
+
+    public String getScheme() {
+        return mData != null ? mData.getScheme() : null;
+    }
+
+    public String getType() {
+        return mType;
+    }
+
+    public Intent setType(String type) {
+        mData = null;
+        mType = type;
+        return this;
+    }
+
+    public Intent setDataAndType(Uri data, String type) {
+        mData = data;
+        mType = type;
+        return this;
+    }
+
+    public String resolveType(ContentResolver resolver) {
+        if (mType != null) {
+            return mType;
+        }
+        if (mData != null && "content".equals(mData.getScheme())) {
+            return resolver.getType(mData);
+        }
+        return null;
+    }
+
+    public String resolveTypeIfNeeded(ContentResolver resolver) {
+        if (mComponent != null) {
+            return mType;
+        }
+        return resolveType(resolver);
+    }
+
+    public int getFlags() {
+        return mFlags;
+    }
+
+    public Intent setFlags(int flags) {
+        mFlags = flags;
+        return this;
+    }
+
+    public Intent addFlags(int flags) {
+        mFlags |= flags;
+        return this;
+    }
+
+    public ComponentName getComponent() {
+        return mComponent;
+    }
+
+    public Intent setComponent(ComponentName component) {
+        mComponent = component;
+        return this;
+    }
+
+    public Set<String> getCategories() {
+        return mCategories;
+    }
+
+    public boolean hasCategory(String category) {
+        return mCategories != null && mCategories.contains(category);
+    }
+
+    public Intent addCategory(String category) {
+        if (mCategories == null) {
+            mCategories = new HashSet<String>();
+        }
+        mCategories.add(category.intern());
+        return this;
+    }
+
+    public void removeCategory(String category) {
+        if (mCategories != null) {
+            mCategories.remove(category);
+            if (mCategories.size() == 0) {
+                mCategories = null;
+            }
+        }
+    }
+
+    public void setExtrasClassLoader(ClassLoader loader) {
+        if (mExtras != null) {
+            mExtras.setClassLoader(loader);
+        }
+    }
+
+    public boolean hasExtra(String name) {
+        return mExtras != null && mExtras.containsKey(name);
+    }
+
+    public Bundle getExtras() {
+        return mExtras != null ? new Bundle(mExtras) : null;
+    }
+
+    private Bundle extras() {
+        if (mExtras == null) {
+            mExtras = new Bundle();
+        }
+        return mExtras;
+    }
+
+    public Intent putExtra(String name, boolean value) {
+        extras().putBoolean(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, int value) {
+        extras().putInt(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, long value) {
+        extras().putLong(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, double value) {
+        extras().putDouble(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, String value) {
+        extras().putString(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, byte[] value) {
+        extras().putByteArray(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, Parcelable value) {
+        extras().putParcelable(name, value);
+        return this;
+    }
+
+    public Intent putExtras(Bundle extras) {
+        extras().putAll(extras);
+        return this;
+    }
+
+    public void removeExtra(String name) {
+        if (mExtras != null) {
+            mExtras.remove(name);
+        }
+    }
+
+    public boolean getBooleanExtra(String name, boolean defaultValue) {
+        return mExtras == null ? defaultValue : mExtras.getBoolean(name,
+                defaultValue);
+    }
+
+    public int getIntExtra(String name, int defaultValue) {
+        return mExtras == null ? defaultValue : mExtras.getInt(name,
+                defaultValue);
+    }
+
+    public long getLongExtra(String name, long defaultValue) {
+        return mExtras == null ? defaultValue : mExtras.getLong(name,
+                defaultValue);
+    }
+
+    public String getStringExtra(String name) {
+        return mExtras == null ? null : mExtras.getString(name);
+    }
+
+    public byte[] getByteArrayExtra(String name) {
+        return mExtras == null ? null : mExtras.getByteArray(name);
+    }
+
+    public <T extends Parcelable> T getParcelableExtra(String name) {
+        return mExtras == null ? null : mExtras.<T> getParcelable(name);
+    }
+
+    /** Same action, data, type, component and categories; extras aside. */
+    public boolean filterEquals(Intent other) {
+        if (other == null) {
+            return false;
+        }
+        return equal(mAction, other.mAction) && equal(mData, other.mData)
+                && equal(mType, other.mType)
+                && equal(mComponent, other.mComponent)
+                && equal(mCategories, other.mCategories);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel out, int flags) {
+        out.writeString(mAction);
+        out.writeString(mData != null ? mData.toString() : null);
+        out.writeString(mType);
+        out.writeInt(mFlags);
+        out.writeString(mComponent != null ? mComponent.flattenToString()
+                : null);
+        if (mCategories != null) {
+            out.writeInt(mCategories.size());
+            for (String category : mCategories) {
+                out.writeString(category);
+            }
+        } else {
+            out.writeInt(0);
+        }
+        out.writeBundle(mExtras);
+    }
+
+    public void readFromParcel(Parcel in) {
+        mAction = in.readString();
+        final String data = in.readString();
+        mData = data != null ? Uri.parse(data) : null;
+        mType = in.readString();
+        mFlags = in.readInt();
+        final String component = in.readString();
+        mComponent = component != null ? ComponentName
+                .unflattenFromString(component) : null;
+        final int count = in.readInt();
+        if (count > 0) {
+            mCategories = new HashSet<String>();
+            for (int i = 0; i < count; i++) {
+                mCategories.add(in.readString().intern());
+            }
+        } else {
+            mCategories = null;
+        }
+        mExtras = in.readBundle(null);
+    }
+
+    public static final Parcelable.Creator<Intent> CREATOR = new Parcelable.Creator<Intent>() {
+        @Override
+        public Intent createFromParcel(Parcel in) {
+            return new Intent(in);
+        }
+
+        @Override
+        public Intent[] newArray(int size) {
+            return new Intent[size];
+        }
+    };
+
+    @Override
+    public String toString() {
+        final StringBuilder b = new StringBuilder("Intent { ");
+        if (mAction != null) {
+            b.append("act=").append(mAction).append(' ');
+        }
+        if (mCategories != null) {
+            b.append("cat=").append(mCategories).append(' ');
+        }
+        if (mData != null) {
+            b.append("dat=").append(mData).append(' ');
+        }
+        if (mType != null) {
+            b.append("typ=").append(mType).append(' ');
+        }
+        if (mFlags != 0) {
+            b.append("flg=0x").append(Integer.toHexString(mFlags))
+                    .append(' ');
+        }
+        if (mComponent != null) {
+            b.append("cmp=").append(mComponent.flattenToString()).append(' ');
+        }
+        if (mExtras != null) {
+            b.append("(has extras) ");
+        }
+        return b.append('}').toString();
+    }
+}
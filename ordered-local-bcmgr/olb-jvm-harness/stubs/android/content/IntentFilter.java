@@ -0,0 +1,257 @@
+package android.content;
+
+import java.util.ArrayList;
+import java.util.Set;
+
+import android.net.Uri;
+
+/**
+ * JVM stand-in for {@code android.content.IntentFilter}: actions,
+ * categories, data schemes and MIME types, matched the way the platform
+ * does. Authorities and paths are not modelled.
+ */
+public class IntentFilter {
+
+    public static final int SYSTEM_HIGH_PRIORITY = 1000;
+    public static final int SYSTEM_LOW_PRIORITY = -1000;
+
+    public static final int MATCH_CATEGORY_MASK = 0xfff0000;
+    public static final int MATCH_ADJUSTMENT_NORMAL = 0x8000;
+    public static final int MATCH_CATEGORY_EMPTY = 0x0100000;
+    public static final int MATCH_CATEGORY_SCHEME = 0x0200000;
+    public static final int MATCH_CATEGORY_TYPE = 0x0600000;
+
+    public static final int NO_MATCH_TYPE = -1;
+    public static final int NO_MATCH_DATA = -2;
+    public static final int NO_MATCH_ACTION = -3;
+    public static final int NO_MATCH_CATEGORY = -4;
+
+    public static class MalformedMimeTypeException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        public MalformedMimeTypeException(String name) {
+            super(name);
+        }
+    }
+
+    private int mPriority;
+    private final ArrayList<String> mActions;
+    private ArrayList<String> mCategories;
+    private ArrayList<String> mDataSchemes;
+    private ArrayList<String> mDataTypes;
+
+    public IntentFilter() {
+        mActions = new ArrayList<String>();
+    }
+
+    public IntentFilter(String action) {
+        this();
+        addAction(action);
+    }
+
+    public IntentFilter(String action, String dataType)
+            throws MalformedMimeTypeException {
+        this(action);
+        addDataType(dataType);
+    }
+
+    public IntentFilter(IntentFilter o) {
+        mPriority = o.mPriority;
+        mActions = new ArrayList<String>(o.mActions);
+        if (o.mCategories != null) {
+            mCategories = new ArrayList<String>(o.mCategories);
+        }
+        if (o.mDataSchemes != null) {
+            mDataSchemes = new ArrayList<String>(o.mDataSchemes);
+        }
+        if (o.mDataTypes != null) {
+            mDataTypes = new ArrayList<String>(o.mDataTypes);
+        }
+    }
+
+    public final void setPriority(int priority) {
+        mPriority = priority;
+    }
+
+    public final int getPriority() {
+        return mPriority;
+    }
+
+    public final void addAction(String action) {
+        if (!mActions.contains(action)) {
+            mActions.add(action.intern());
+        }
+    }
+
+    public final int countActions() {
+        return mActions.size();
+    }
+
+    public final String getAction(int index) {
+        return mActions.get(index);
+    }
+
+    public final boolean hasAction(String action) {
+        return action != null && mActions.contains(action);
+    }
+
+    public final boolean matchAction(String action) {
+        return hasAction(action);
+    }
+
+    public final void addCategory(String category) {
+        if (mCategories == null) {
+            mCategories = new ArrayList<String>();
+        }
+        if (!mCategories.contains(category)) {
+            mCategories.add(category.intern());
+        }
+    }
+
+    public final int countCategories() {
+        return mCategories != null ? mCategories.size() : 0;
+    }
+
+    public final String getCategory(int index) {
+        return mCategories.get(index);
+    }
+
+    public final boolean hasCategory(String category) {
+        return mCategories != null && mCategories.contains(category);
+    }
+
+    public final void addDataScheme(String scheme) {
+        if (mDataSchemes == null) {
+            mDataSchemes = new ArrayList<String>();
+        }
+        if (!mDataSchemes.contains(scheme)) {
+            mDataSchemes.add(scheme.intern());
+        }
+    }
+
+    public final int countDataSchemes() {
+        return mDataSchemes != null ? mDataSchemes.size() : 0;
+    }
+
+    public final String getDataScheme(int index) {
+        return mDataSchemes.get(index);
+    }
+
+    public final boolean hasDataScheme(String scheme) {
+        return mDataSchemes != null && mDataSchemes.contains(scheme);
+    }
+
+    public final void addDataType(String type)
+            throws MalformedMimeTypeException {
+        final int slash = type.indexOf('/');
+        if (slash <= 0 || type.length() < slash + 2) {
+            throw new MalformedMimeTypeException(type);
+        }
+        if (mDataTypes == null) {
+            mDataTypes = new ArrayList<String>();
+        }
+        // As on the platform, "image/*" is kept as "image".
+        final String stored = type.length() == slash + 2
+                && type.charAt(slash + 1) == '*' ? type.substring(0, slash)
+                : type;
+        if (!mDataTypes.contains(stored)) {
+            mDataTypes.add(stored.intern());
+        }
+    }
+
+    public final int countDataTypes() {
+        return mDataTypes != null ? mDataTypes.size() : 0;
+    }
+
+    public final boolean hasDataType(String type) {
+        return mDataTypes != null && findMimeType(type);
+    }
+
+    public final int matchData(String type, String scheme, Uri data) {
+        final ArrayList<String> types = mDataTypes;
+        final ArrayList<String> schemes = mDataSchemes;
+        int match = MATCH_CATEGORY_EMPTY;
+        if (types == null && schemes == null) {
+            return type == null && data == null ? MATCH_CATEGORY_EMPTY
+                    + MATCH_ADJUSTMENT_NORMAL : NO_MATCH_DATA;
+        }
+        if (schemes != null) {
+            if (!schemes.contains(scheme != null ? scheme : "")) {
+                return NO_MATCH_DATA;
+            }
+            match = MATCH_CATEGORY_SCHEME;
+        } else if (scheme != null && !"".equals(scheme)
+                && !"content".equals(scheme) && !"file".equals(scheme)) {
+            // Types without schemes only take content: and file: data.
+            return NO_MATCH_DATA;
+        }
+        if (types != null) {
+            if (!findMimeType(type)) {
+                return NO_MATCH_TYPE;
+            }
+            match = MATCH_CATEGORY_TYPE;
+        } else if (type != null) {
+            return NO_MATCH_TYPE;
+        }
+        return match + MATCH_ADJUSTMENT_NORMAL;
+    }
+
+    /** Null if every category in {@code categories} is in the filter. */
+    public final String matchCategories(Set<String> categories) {
+        if (categories == null) {
+            return null;
+        }
+        for (String category : categories) {
+            if (!hasCategory(category)) {
+                return category;
+            }
+        }
+        return null;
+    }
+
+    public final int match(String action, String type, String scheme,
+            Uri data, Set<String> categories, String logTag) {
+        if (action != null && !matchAction(action)) {
+            return NO_MATCH_ACTION;
+        }
+        final int dataMatch = matchData(type, scheme, data);
+        if (dataMatch < 0) {
+            return dataMatch;
+        }
+        if (matchCategories(categories) != null) {
+            return NO_MATCH_CATEGORY;
+        }
+        return dataMatch;
+    }
+
+    private boolean findMimeType(String type) {
+        final ArrayList<String> t = mDataTypes;
+        if (type == null) {
+            return false;
+        }
+        if (t.contains(type)) {
+            return true;
+        }
+        final int slash = type.indexOf('/');
+        if (slash > 0) {
+            if (t.contains(type.substring(0, slash))) {
+                return true;
+            }
+            // "*/*" in the Intent matches any type in the filter.
+            if (type.equals("*/*")) {
+                return !t.isEmpty();
+            }
+            if (type.length() == slash + 2 && type.charAt(slash + 1) == '*') {
+                final String major = type.substring(0, slash + 1);
+                for (int i = 0; i < t.size(); i++) {
+                    if (t.get(i).startsWith(major)
+                            || t.get(i).equals(type.substring(0, slash))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,29 @@
+package android.net;
+
+/**
+ * JVM stand-in for {@code android.net.Credentials}.
+ */
+public class Credentials {
+
+    private final int mPid;
+    private final int mUid;
+    private final int mGid;
+
+    public Credentials(int pid, int uid, int gid) {
+        mPid = pid;
+        mUid = uid;
+        mGid = gid;
+    }
+
+    public int getPid() {
+        return mPid;
+    }
+
+    public int getUid() {
+        return mUid;
+    }
+
+    public int getGid() {
+        return mGid;
+    }
+}
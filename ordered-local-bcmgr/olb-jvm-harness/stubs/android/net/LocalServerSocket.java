@@ -0,0 +1,21 @@
+package android.net;
+
+import java.io.IOException;
+
+/**
+ * JVM stand-in for {@code android.net.LocalServerSocket}; see
+ * {@link LocalSocket}.
+ */
+public class LocalServerSocket {
+
+    public LocalServerSocket(String name) throws IOException {
+        throw new IOException("No local sockets on the JVM");
+    }
+
+    public LocalSocket accept() throws IOException {
+        throw new IOException("No local sockets on the JVM");
+    }
+
+    public void close() throws IOException {
+    }
+}
@@ -0,0 +1,33 @@
+package android.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * JVM stand-in for {@code android.net.LocalSocket}. There are no abstract
+ * sockets on the JVM; the harness connects bridges over streams instead.
+ */
+public class LocalSocket implements Closeable {
+
+    public void connect(LocalSocketAddress endpoint) throws IOException {
+        throw new IOException("No local sockets on the JVM");
+    }
+
+    public InputStream getInputStream() throws IOException {
+        throw new IOException("Not connected");
+    }
+
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("Not connected");
+    }
+
+    public Credentials getPeerCredentials() throws IOException {
+        throw new IOException("Not connected");
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+}
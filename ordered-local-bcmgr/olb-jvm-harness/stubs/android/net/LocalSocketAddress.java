@@ -0,0 +1,17 @@
+package android.net;
+
+/**
+ * JVM stand-in for {@code android.net.LocalSocketAddress}.
+ */
+public class LocalSocketAddress {
+
+    private final String mName;
+
+    public LocalSocketAddress(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+}
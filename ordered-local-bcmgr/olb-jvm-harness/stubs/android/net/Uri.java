@@ -0,0 +1,95 @@
+package android.net;
+
+/**
+ * JVM stand-in for {@code android.net.Uri}; hierarchical URIs only.
+ */
+public abstract class Uri implements Comparable<Uri> {
+
+    public abstract String getScheme();
+
+    public abstract String getAuthority();
+
+    public abstract String getPath();
+
+    public static Uri parse(String uriString) {
+        return new StringUri(uriString);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Uri && toString().equals(o.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    @Override
+    public int compareTo(Uri other) {
+        return toString().compareTo(other.toString());
+    }
+
+    private static final class StringUri extends Uri {
+
+        private final String mUriString;
+        private final String mScheme;
+        private final String mAuthority;
+        private final String mPath;
+
+        StringUri(String uriString) {
+            if (uriString == null) {
+                throw new NullPointerException("uriString");
+            }
+            mUriString = uriString;
+            final int colon = uriString.indexOf(':');
+            final int slash = uriString.indexOf('/');
+            String rest = uriString;
+            if (colon > 0 && (slash < 0 || colon < slash)) {
+                mScheme = uriString.substring(0, colon);
+                rest = uriString.substring(colon + 1);
+            } else {
+                mScheme = null;
+            }
+            final int query = indexOfEither(rest, '?', '#');
+            if (query >= 0) {
+                rest = rest.substring(0, query);
+            }
+            if (rest.startsWith("//")) {
+                final int end = rest.indexOf('/', 2);
+                mAuthority = end < 0 ? rest.substring(2) : rest.substring(2,
+                        end);
+                rest = end < 0 ? "" : rest.substring(end);
+            } else {
+                mAuthority = null;
+            }
+            mPath = rest;
+        }
+
+        private static int indexOfEither(String s, char a, char b) {
+            final int i = s.indexOf(a);
+            final int j = s.indexOf(b);
+            return i < 0 ? j : j < 0 ? i : Math.min(i, j);
+        }
+
+        @Override
+        public String getScheme() {
+            return mScheme;
+        }
+
+        @Override
+        public String getAuthority() {
+            return mAuthority;
+        }
+
+        @Override
+        public String getPath() {
+            return mPath;
+        }
+
+        @Override
+        public String toString() {
+            return mUriString;
+        }
+    }
+}
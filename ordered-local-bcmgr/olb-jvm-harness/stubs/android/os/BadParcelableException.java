@@ -0,0 +1,19 @@
+package android.os;
+
+import android.util.AndroidRuntimeException;
+
+/**
+ * JVM stand-in for {@code android.os.BadParcelableException}.
+ */
+public class BadParcelableException extends AndroidRuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BadParcelableException(String msg) {
+        super(msg);
+    }
+
+    public BadParcelableException(Exception cause) {
+        super(cause);
+    }
+}
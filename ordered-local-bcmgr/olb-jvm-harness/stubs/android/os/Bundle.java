@@ -0,0 +1,232 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * JVM stand-in for {@code android.os.Bundle}. As on a device, a Bundle read
+ * from a Parcel keeps its bytes until first accessed, so a value which cannot
+ * be unparcelled fails then rather than when the Parcel is read.
+ */
+public final class Bundle {
+
+    private HashMap<String, Object> mMap;
+    private byte[] mParcelledData;
+    private ClassLoader mClassLoader;
+
+    public Bundle() {
+        mMap = new HashMap<String, Object>();
+    }
+
+    public Bundle(Bundle b) {
+        if (b.mParcelledData != null) {
+            mParcelledData = b.mParcelledData;
+        } else {
+            mMap = new HashMap<String, Object>(b.mMap);
+        }
+        mClassLoader = b.mClassLoader;
+    }
+
+    /** Reads the {@code length} bytes of a Bundle written to {@code p}. */
+    Bundle(Parcel p, int length) {
+        mParcelledData = p.readRaw(length);
+    }
+
+    public void setClassLoader(ClassLoader loader) {
+        mClassLoader = loader;
+    }
+
+    public ClassLoader getClassLoader() {
+        return mClassLoader;
+    }
+
+    private void unparcel() {
+        if (mParcelledData == null) {
+            return;
+        }
+        final byte[] data = mParcelledData;
+        final Parcel p = Parcel.obtain();
+        try {
+            p.unmarshall(data, 0, data.length);
+            final int count = p.readInt();
+            final HashMap<String, Object> map = new HashMap<String, Object>(
+                    Math.max(count, 0) * 2);
+            for (int i = 0; i < count; i++) {
+                final String key = p.readString();
+                map.put(key, p.readValue(mClassLoader));
+            }
+            mMap = map;
+            mParcelledData = null;
+        } finally {
+            p.recycle();
+        }
+    }
+
+    public int size() {
+        unparcel();
+        return mMap.size();
+    }
+
+    public boolean isEmpty() {
+        unparcel();
+        return mMap.isEmpty();
+    }
+
+    public void clear() {
+        unparcel();
+        mMap.clear();
+    }
+
+    public boolean containsKey(String key) {
+        unparcel();
+        return mMap.containsKey(key);
+    }
+
+    public Object get(String key) {
+        unparcel();
+        return mMap.get(key);
+    }
+
+    public void remove(String key) {
+        unparcel();
+        mMap.remove(key);
+    }
+
+    public Set<String> keySet() {
+        unparcel();
+        return mMap.keySet();
+    }
+
+    public void putAll(Bundle map) {
+        unparcel();
+        map.unparcel();
+        mMap.putAll(map.mMap);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        unparcel();
+        mMap.put(key, value);
+    }
+
+    public void putInt(String key, int value) {
+        unparcel();
+        mMap.put(key, value);
+    }
+
+    public void putLong(String key, long value) {
+        unparcel();
+        mMap.put(key, value);
+    }
+
+    public void putDouble(String key, double value) {
+        unparcel();
+        mMap.put(key, value);
+    }
+
+    public void putString(String key, String value) {
+        unparcel();
+        mMap.put(key, value);
+    }
+
+    public void putByteArray(String key, byte[] value) {
+        unparcel();
+        mMap.put(key, value);
+    }
+
+    public void putParcelable(String key, Parcelable value) {
+        unparcel();
+        mMap.put(key, value);
+    }
+
+    public void putBundle(String key, Bundle value) {
+        unparcel();
+        mMap.put(key, value);
+    }
+
+    public boolean getBoolean(String key) {
+        return getBoolean(key, false);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        final Object o = get(key);
+        return o instanceof Boolean ? (Boolean) o : defaultValue;
+    }
+
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        final Object o = get(key);
+        return o instanceof Integer ? (Integer) o : defaultValue;
+    }
+
+    public long getLong(String key) {
+        return getLong(key, 0L);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        final Object o = get(key);
+        return o instanceof Long ? (Long) o : defaultValue;
+    }
+
+    public double getDouble(String key) {
+        return getDouble(key, 0.0);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        final Object o = get(key);
+        return o instanceof Double ? (Double) o : defaultValue;
+    }
+
+    public String getString(String key) {
+        final Object o = get(key);
+        return o instanceof String ? (String) o : null;
+    }
+
+    public byte[] getByteArray(String key) {
+        final Object o = get(key);
+        return o instanceof byte[] ? (byte[]) o : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> T getParcelable(String key) {
+        final Object o = get(key);
+        return o instanceof Parcelable ? (T) o : null;
+    }
+
+    public Bundle getBundle(String key) {
+        final Object o = get(key);
+        return o instanceof Bundle ? (Bundle) o : null;
+    }
+
+    /** Writes the length of the contents, then the contents. */
+    public void writeToParcel(Parcel p, int flags) {
+        if (mParcelledData != null) {
+            p.writeInt(mParcelledData.length);
+            p.writeRaw(mParcelledData);
+            return;
+        }
+        final int lengthPos = p.dataPosition();
+        p.writeInt(0);
+        final int start = p.dataPosition();
+        p.writeInt(mMap.size());
+        for (String key : mMap.keySet()) {
+            p.writeString(key);
+            p.writeValue(mMap.get(key));
+        }
+        final int end = p.dataPosition();
+        p.setDataPosition(lengthPos);
+        p.writeInt(end - start);
+        p.setDataPosition(end);
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (mParcelledData != null) {
+            return "Bundle[mParcelledData.dataSize=" + mParcelledData.length
+                    + "]";
+        }
+        return "Bundle[" + mMap.toString() + "]";
+    }
+}
@@ -0,0 +1,85 @@
+package android.os;
+
+/**
+ * JVM stand-in for {@code android.os.Handler}.
+ */
+public class Handler {
+
+    final Looper mLooper;
+    final MessageQueue mQueue;
+
+    public Handler() {
+        this(Looper.myLooper());
+    }
+
+    public Handler(Looper looper) {
+        if (looper == null) {
+            throw new RuntimeException("Can't create handler without a Looper");
+        }
+        mLooper = looper;
+        mQueue = looper.mQueue;
+    }
+
+    public void handleMessage(Message msg) {
+    }
+
+    public void dispatchMessage(Message msg) {
+        if (msg.callback != null) {
+            msg.callback.run();
+        } else {
+            handleMessage(msg);
+        }
+    }
+
+    public final Looper getLooper() {
+        return mLooper;
+    }
+
+    public final Message obtainMessage(int what) {
+        return Message.obtain(this, what);
+    }
+
+    public final boolean sendMessage(Message msg) {
+        return sendMessageAtTime(msg, SystemClock.uptimeMillis());
+    }
+
+    public final boolean sendMessageDelayed(Message msg, long delayMillis) {
+        return sendMessageAtTime(msg,
+                SystemClock.uptimeMillis() + Math.max(0, delayMillis));
+    }
+
+    public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+        msg.target = this;
+        return mQueue.enqueueMessage(msg, uptimeMillis);
+    }
+
+    public final boolean sendEmptyMessage(int what) {
+        return sendMessage(obtainMessage(what));
+    }
+
+    public final boolean sendEmptyMessageDelayed(int what, long delayMillis) {
+        return sendMessageDelayed(obtainMessage(what), delayMillis);
+    }
+
+    public final boolean sendEmptyMessageAtTime(int what, long uptimeMillis) {
+        return sendMessageAtTime(obtainMessage(what), uptimeMillis);
+    }
+
+    public final boolean post(Runnable r) {
+        return postDelayed(r, 0);
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis) {
+        final Message msg = Message.obtain();
+        msg.callback = r;
+        return sendMessageDelayed(msg, delayMillis);
+    }
+
+    public final boolean hasMessages(int what) {
+        return mQueue.hasMessages(this, what);
+    }
+
+    public final void removeMessages(int what) {
+        mQueue.removeMessages(this, what);
+    }
+}
@@ -0,0 +1,64 @@
+package android.os;
+
+/**
+ * JVM stand-in for {@code android.os.Looper}. The main Looper is a daemon
+ * thread called "main", started the first time it is asked for.
+ */
+public final class Looper {
+
+    private static final ThreadLocal<Looper> sThreadLocal = new ThreadLocal<Looper>();
+    private static Looper sMainLooper;
+
+    final MessageQueue mQueue = new MessageQueue();
+    final Thread mThread;
+
+    private Looper() {
+        mThread = Thread.currentThread();
+    }
+
+    public static void prepare() {
+        if (sThreadLocal.get() != null) {
+            throw new RuntimeException(
+                    "Only one Looper may be created per thread");
+        }
+        sThreadLocal.set(new Looper());
+    }
+
+    public static Looper myLooper() {
+        return sThreadLocal.get();
+    }
+
+    public static synchronized Looper getMainLooper() {
+        if (sMainLooper == null) {
+            final HandlerThread main = new HandlerThread("main");
+            main.setDaemon(true);
+            main.start();
+            sMainLooper = main.getLooper();
+        }
+        return sMainLooper;
+    }
+
+    public static void loop() {
+        final Looper me = myLooper();
+        if (me == null) {
+            throw new RuntimeException(
+                    "No Looper; Looper.prepare() wasn't called on this thread.");
+        }
+        while (true) {
+            final Message msg = me.mQueue.next();
+            if (msg == null) {
+                return;
+            }
+            msg.target.dispatchMessage(msg);
+            msg.recycle();
+        }
+    }
+
+    public void quit() {
+        mQueue.quit();
+    }
+
+    public Thread getThread() {
+        return mThread;
+    }
+}
@@ -0,0 +1,68 @@
+package android.os;
+
+/**
+ * JVM stand-in for {@code android.os.Message}: pooled like the real one, so
+ * that posting a message allocates nothing in steady state.
+ */
+public final class Message {
+
+    private static final Object sPoolSync = new Object();
+    private static Message sPool;
+    private static int sPoolSize;
+    private static final int MAX_POOL_SIZE = 50;
+
+    public int what;
+    public int arg1;
+    public int arg2;
+    public Object obj;
+
+    long when;
+    Handler target;
+    Runnable callback;
+    Message next;
+
+    public static Message obtain() {
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                final Message m = sPool;
+                sPool = m.next;
+                m.next = null;
+                sPoolSize--;
+                return m;
+            }
+        }
+        return new Message();
+    }
+
+    public static Message obtain(Handler h, int what) {
+        final Message m = obtain();
+        m.target = h;
+        m.what = what;
+        return m;
+    }
+
+    public void recycle() {
+        what = 0;
+        arg1 = 0;
+        arg2 = 0;
+        obj = null;
+        when = 0;
+        target = null;
+        callback = null;
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                next = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    public Handler getTarget() {
+        return target;
+    }
+
+    public long getWhen() {
+        return when;
+    }
+}
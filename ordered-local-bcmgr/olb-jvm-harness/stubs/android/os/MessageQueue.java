@@ -0,0 +1,101 @@
+package android.os;
+
+/**
+ * JVM stand-in for {@code android.os.MessageQueue}: messages kept in a list
+ * sorted by due time, behind a monitor.
+ */
+public final class MessageQueue {
+
+    private Message mMessages;
+    private boolean mQuitting;
+
+    synchronized boolean enqueueMessage(Message msg, long when) {
+        if (mQuitting) {
+            msg.recycle();
+            return false;
+        }
+        msg.when = when;
+        Message p = mMessages;
+        if (p == null || when < p.when) {
+            msg.next = p;
+            mMessages = msg;
+        } else {
+            while (p.next != null && p.next.when <= when) {
+                p = p.next;
+            }
+            msg.next = p.next;
+            p.next = msg;
+        }
+        notifyAll();
+        return true;
+    }
+
+    /** Blocks until a message is due; null once the queue quits. */
+    synchronized Message next() {
+        while (true) {
+            if (mQuitting) {
+                return null;
+            }
+            final Message msg = mMessages;
+            if (msg == null) {
+                waitFor(0);
+                continue;
+            }
+            final long now = SystemClock.uptimeMillis();
+            if (msg.when > now) {
+                waitFor(msg.when - now);
+                continue;
+            }
+            mMessages = msg.next;
+            msg.next = null;
+            return msg;
+        }
+    }
+
+    synchronized boolean hasMessages(Handler h, int what) {
+        for (Message p = mMessages; p != null; p = p.next) {
+            if (p.target == h && p.what == what && p.callback == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void removeMessages(Handler h, int what) {
+        Message prev = null;
+        Message p = mMessages;
+        while (p != null) {
+            final Message next = p.next;
+            if (p.target == h && p.what == what && p.callback == null) {
+                if (prev == null) {
+                    mMessages = next;
+                } else {
+                    prev.next = next;
+                }
+                p.recycle();
+            } else {
+                prev = p;
+            }
+            p = next;
+        }
+    }
+
+    synchronized void quit() {
+        mQuitting = true;
+        while (mMessages != null) {
+            final Message p = mMessages;
+            mMessages = p.next;
+            p.recycle();
+        }
+        notifyAll();
+    }
+
+    private void waitFor(long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mQuitting = true;
+        }
+    }
+}
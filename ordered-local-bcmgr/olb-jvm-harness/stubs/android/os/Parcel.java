@@ -0,0 +1,333 @@
+package android.os;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+/**
+ * JVM stand-in for {@code android.os.Parcel}, backed by a byte array. Knows
+ * the value types the harness puts in Bundles; anything else fails to
+ * marshal, as Binders and file descriptors do on a device.
+ */
+public final class Parcel {
+
+    private static final int VAL_NULL = -1;
+    private static final int VAL_STRING = 0;
+    private static final int VAL_INTEGER = 1;
+    private static final int VAL_BUNDLE = 3;
+    private static final int VAL_PARCELABLE = 4;
+    private static final int VAL_LONG = 6;
+    private static final int VAL_DOUBLE = 8;
+    private static final int VAL_BOOLEAN = 9;
+    private static final int VAL_BYTEARRAY = 13;
+
+    private static final Object sPoolSync = new Object();
+    private static Parcel sPool;
+    private static int sPoolSize;
+    private static final int MAX_POOL_SIZE = 6;
+
+    private byte[] mData = new byte[64];
+    private int mSize;
+    private int mPosition;
+    private Parcel mNext;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                final Parcel p = sPool;
+                sPool = p.mNext;
+                p.mNext = null;
+                sPoolSize--;
+                return p;
+            }
+        }
+        return new Parcel();
+    }
+
+    public void recycle() {
+        mSize = 0;
+        mPosition = 0;
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                mNext = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    public int dataSize() {
+        return mSize;
+    }
+
+    public int dataPosition() {
+        return mPosition;
+    }
+
+    public int dataAvail() {
+        return mSize - mPosition;
+    }
+
+    public void setDataPosition(int pos) {
+        mPosition = pos;
+    }
+
+    public void setDataSize(int size) {
+        ensureCapacity(size);
+        mSize = size;
+        if (mPosition > size) {
+            mPosition = size;
+        }
+    }
+
+    public byte[] marshall() {
+        return Arrays.copyOf(mData, mSize);
+    }
+
+    public void unmarshall(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, mData, 0, length);
+        mSize = length;
+        mPosition = 0;
+    }
+
+    public void writeInt(int val) {
+        final int pos = grow(4);
+        mData[pos] = (byte) (val >>> 24);
+        mData[pos + 1] = (byte) (val >>> 16);
+        mData[pos + 2] = (byte) (val >>> 8);
+        mData[pos + 3] = (byte) val;
+    }
+
+    /** Reads past the end return 0, as on a device. */
+    public int readInt() {
+        if (mPosition + 4 > mSize) {
+            mPosition = mSize;
+            return 0;
+        }
+        final int pos = mPosition;
+        mPosition += 4;
+        return (mData[pos] & 0xff) << 24 | (mData[pos + 1] & 0xff) << 16
+                | (mData[pos + 2] & 0xff) << 8 | (mData[pos + 3] & 0xff);
+    }
+
+    public void writeLong(long val) {
+        writeInt((int) (val >>> 32));
+        writeInt((int) val);
+    }
+
+    public long readLong() {
+        final long high = readInt();
+        return high << 32 | (readInt() & 0xffffffffL);
+    }
+
+    public void writeDouble(double val) {
+        writeLong(Double.doubleToRawLongBits(val));
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public void writeString(String val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(val.length());
+        for (int i = 0; i < val.length(); i++) {
+            final int pos = grow(2);
+            final char c = val.charAt(i);
+            mData[pos] = (byte) (c >>> 8);
+            mData[pos + 1] = (byte) c;
+        }
+    }
+
+    public String readString() {
+        final int length = readInt();
+        if (length < 0 || length > dataAvail() / 2) {
+            return null;
+        }
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ((mData[mPosition] & 0xff) << 8
+                    | (mData[mPosition + 1] & 0xff));
+            mPosition += 2;
+        }
+        return new String(chars);
+    }
+
+    public void writeByteArray(byte[] b) {
+        if (b == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(b.length);
+        final int pos = grow(b.length);
+        System.arraycopy(b, 0, mData, pos, b.length);
+    }
+
+    public byte[] createByteArray() {
+        final int length = readInt();
+        if (length < 0 || length > dataAvail()) {
+            return null;
+        }
+        final byte[] b = Arrays.copyOfRange(mData, mPosition, mPosition
+                + length);
+        mPosition += length;
+        return b;
+    }
+
+    public void writeBundle(Bundle val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        val.writeToParcel(this, 0);
+    }
+
+    public Bundle readBundle(ClassLoader loader) {
+        final int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        final Bundle bundle = new Bundle(this, length);
+        if (loader != null) {
+            bundle.setClassLoader(loader);
+        }
+        return bundle;
+    }
+
+    public void writeParcelable(Parcelable p, int flags) {
+        if (p == null) {
+            writeString(null);
+            return;
+        }
+        writeString(p.getClass().getName());
+        p.writeToParcel(this, flags);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> T readParcelable(ClassLoader loader) {
+        final String name = readString();
+        if (name == null) {
+            return null;
+        }
+        final Parcelable.Creator<T> creator;
+        try {
+            final Class<?> c = Class.forName(name, true,
+                    loader != null ? loader : Parcel.class.getClassLoader());
+            final Field f = c.getField("CREATOR");
+            creator = (Parcelable.Creator<T>) f.get(null);
+        } catch (ClassNotFoundException e) {
+            throw new BadParcelableException(
+                    "ClassNotFoundException when unmarshalling: " + name);
+        } catch (NoSuchFieldException e) {
+            throw new BadParcelableException(
+                    "Parcelable protocol requires a Parcelable.Creator object called CREATOR on class "
+                            + name);
+        } catch (IllegalAccessException e) {
+            throw new BadParcelableException(
+                    "IllegalAccessException when unmarshalling: " + name);
+        }
+        if (creator == null) {
+            throw new BadParcelableException(
+                    "Parcelable protocol requires a Parcelable.Creator object called CREATOR on class "
+                            + name);
+        }
+        return creator.createFromParcel(this);
+    }
+
+    public void writeValue(Object v) {
+        if (v == null) {
+            writeInt(VAL_NULL);
+        } else if (v instanceof String) {
+            writeInt(VAL_STRING);
+            writeString((String) v);
+        } else if (v instanceof Integer) {
+            writeInt(VAL_INTEGER);
+            writeInt((Integer) v);
+        } else if (v instanceof Bundle) {
+            writeInt(VAL_BUNDLE);
+            writeBundle((Bundle) v);
+        } else if (v instanceof Parcelable) {
+            writeInt(VAL_PARCELABLE);
+            writeParcelable((Parcelable) v, 0);
+        } else if (v instanceof Long) {
+            writeInt(VAL_LONG);
+            writeLong((Long) v);
+        } else if (v instanceof Double) {
+            writeInt(VAL_DOUBLE);
+            writeDouble((Double) v);
+        } else if (v instanceof Boolean) {
+            writeInt(VAL_BOOLEAN);
+            writeInt((Boolean) v ? 1 : 0);
+        } else if (v instanceof byte[]) {
+            writeInt(VAL_BYTEARRAY);
+            writeByteArray((byte[]) v);
+        } else {
+            throw new RuntimeException("Parcel: unable to marshal value " + v);
+        }
+    }
+
+    public Object readValue(ClassLoader loader) {
+        final int type = readInt();
+        switch (type) {
+            case VAL_NULL:
+                return null;
+            case VAL_STRING:
+                return readString();
+            case VAL_INTEGER:
+                return readInt();
+            case VAL_BUNDLE:
+                return readBundle(loader);
+            case VAL_PARCELABLE:
+                return readParcelable(loader);
+            case VAL_LONG:
+                return readLong();
+            case VAL_DOUBLE:
+                return readDouble();
+            case VAL_BOOLEAN:
+                return readInt() == 1;
+            case VAL_BYTEARRAY:
+                return createByteArray();
+            default:
+                throw new BadParcelableException("Parcel " + this
+                        + ": Unmarshalling unknown type code " + type
+                        + " at offset " + (mPosition - 4));
+        }
+    }
+
+    /** Writes {@code b} without a length; for Bundle. */
+    void writeRaw(byte[] b) {
+        final int pos = grow(b.length);
+        System.arraycopy(b, 0, mData, pos, b.length);
+    }
+
+    /** Reads {@code length} bytes, or as many as are left; for Bundle. */
+    byte[] readRaw(int length) {
+        final int end = Math.min(mSize, mPosition + length);
+        final byte[] b = Arrays.copyOfRange(mData, mPosition, end);
+        mPosition = end;
+        return b;
+    }
+
+    private int grow(int length) {
+        final int pos = mPosition;
+        ensureCapacity(pos + length);
+        mPosition += length;
+        if (mPosition > mSize) {
+            mSize = mPosition;
+        }
+        return pos;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mData.length) {
+            mData = Arrays.copyOf(mData, Math.max(capacity,
+                    mData.length * 2));
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package android.os;
+
+/**
+ * JVM stand-in for {@code android.os.Process}. Every "process" of the
+ * harness runs as the same application uid.
+ */
+public class Process {
+
+    public static final int FIRST_APPLICATION_UID = 10000;
+
+    public static final int myUid() {
+        return FIRST_APPLICATION_UID;
+    }
+}
@@ -0,0 +1,34 @@
+package android.os;
+
+/**
+ * JVM stand-in for {@code android.os.SystemClock}; uptime is measured from
+ * an arbitrary origin, as on a device.
+ */
+public final class SystemClock {
+
+    private SystemClock() {
+    }
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public static long elapsedRealtime() {
+        return uptimeMillis();
+    }
+
+    public static void sleep(long ms) {
+        final long end = uptimeMillis() + ms;
+        long left = ms;
+        while (left > 0) {
+            try {
+                Thread.sleep(left);
+            } catch (InterruptedException e) {
+                // Like the real one: sleep on, keep the interrupt.
+                Thread.currentThread().interrupt();
+                return;
+            }
+            left = end - uptimeMillis();
+        }
+    }
+}
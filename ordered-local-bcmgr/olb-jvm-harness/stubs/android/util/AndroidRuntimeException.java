@@ -0,0 +1,20 @@
+package android.util;
+
+/**
+ * JVM stand-in for {@code android.util.AndroidRuntimeException}.
+ */
+public class AndroidRuntimeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public AndroidRuntimeException() {
+    }
+
+    public AndroidRuntimeException(String name) {
+        super(name);
+    }
+
+    public AndroidRuntimeException(Exception cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,66 @@
+package android.util;
+
+/**
+ * JVM stand-in for {@code android.util.Log}: warnings and errors go to
+ * standard error; verbose and debug messages only if the system property
+ * {@code log.tag.<tag>} is set to {@code VERBOSE}.
+ */
+public final class Log {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private Log() {
+    }
+
+    public static boolean isLoggable(String tag, int level) {
+        return level >= INFO
+                || "VERBOSE".equals(System.getProperty("log.tag." + tag));
+    }
+
+    public static int v(String tag, String msg) {
+        return println(VERBOSE, tag, msg, null);
+    }
+
+    public static int d(String tag, String msg) {
+        return println(DEBUG, tag, msg, null);
+    }
+
+    public static int i(String tag, String msg) {
+        return println(INFO, tag, msg, null);
+    }
+
+    public static int w(String tag, String msg) {
+        return println(WARN, tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println(WARN, tag, msg, tr);
+    }
+
+    public static int e(String tag, String msg) {
+        return println(ERROR, tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println(ERROR, tag, msg, tr);
+    }
+
+    private static int println(int level, String tag, String msg,
+            Throwable tr) {
+        if (!isLoggable(tag, level)) {
+            return 0;
+        }
+        synchronized (System.err) {
+            System.err.println("VDIWE".charAt(level - VERBOSE) + "/" + tag
+                    + ": " + msg);
+            if (tr != null) {
+                tr.printStackTrace();
+            }
+        }
+        return msg.length();
+    }
+}
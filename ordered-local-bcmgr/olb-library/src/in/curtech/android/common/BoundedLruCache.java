@@ -0,0 +1,108 @@
+package in.curtech.android.common;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Small bounded cache which never locks. Used by
+ * {@link OrderEnabledLocalBroadcastManager} on every send, from any number of
+ * threads, to remember the outcome of matching an Intent against the
+ * registered filters.
+ * <p>
+ * Entries live in sets of two slots, picked by the hash of their key. A
+ * lookup reads the slots of one set; a put takes an empty slot of the set, or
+ * else the one which has not been used since the set was last written to
+ * (CLOCK, which approximates LRU within a set). Slots are replaced
+ * atomically, so readers see either the old entry or the new one.
+ */
+final class BoundedLruCache<K, V> {
+
+    private static final int WAYS = 2;
+
+    private static final class Entry<K, V> {
+        final K key;
+        final V value;
+        /** Set by lookups, cleared by puts passing it over. */
+        volatile boolean used;
+
+        Entry(K _key, V _value) {
+            key = _key;
+            value = _value;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry<K, V>> mSlots;
+    private final int mSetMask;
+
+    /**
+     * @param maxSize Number of entries held at most; rounded up to a power of
+     *            two.
+     */
+    BoundedLruCache(int maxSize) {
+        int sets = 1;
+        while (sets * WAYS < maxSize) {
+            sets <<= 1;
+        }
+        mSlots = new AtomicReferenceArray<Entry<K, V>>(sets * WAYS);
+        mSetMask = sets - 1;
+    }
+
+    /**
+     * Returns the value cached for {@code key}, or null.
+     */
+    V get(K key) {
+        final int set = setOf(key);
+        for (int i = set; i < set + WAYS; i++) {
+            final Entry<K, V> entry = mSlots.get(i);
+            if (entry != null && key.equals(entry.key)) {
+                if (!entry.used) {
+                    entry.used = true;
+                }
+                return entry.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caches {@code value} for {@code key}, which must not be modified
+     * afterwards.
+     */
+    void put(K key, V value) {
+        final int set = setOf(key);
+        int victim = -1;
+        for (int i = set; i < set + WAYS; i++) {
+            final Entry<K, V> entry = mSlots.get(i);
+            if (entry == null || key.equals(entry.key)) {
+                victim = i;
+                break;
+            }
+        }
+        if (victim < 0) {
+            for (int i = set; i < set + WAYS; i++) {
+                final Entry<K, V> entry = mSlots.get(i);
+                if (entry == null || !entry.used) {
+                    victim = i;
+                    break;
+                }
+                entry.used = false;
+            }
+        }
+        if (victim < 0) {
+            // All used since the last put; the first one goes.
+            victim = set;
+        }
+        mSlots.set(victim, new Entry<K, V>(key, value));
+    }
+
+    void clear() {
+        for (int i = 0; i < mSlots.length(); i++) {
+            mSlots.set(i, null);
+        }
+    }
+
+    private int setOf(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return (h & mSetMask) * WAYS;
+    }
+}
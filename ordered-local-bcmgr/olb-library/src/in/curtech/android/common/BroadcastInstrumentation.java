@@ -0,0 +1,168 @@
+package in.curtech.android.common;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.content.Intent;
+
+/**
+ * Collects dispatch statistics per action for an
+ * {@link OrderEnabledLocalBroadcastManager}, to find out which local broadcast
+ * is behind a janky frame. Install it with
+ * {@link OrderEnabledLocalBroadcastManager#setInstrumentation}.
+ * <p>
+ * For every action this records, in {@link Histogram}s:
+ * <ul>
+ * <li>the time broadcasts waited between being sent and being dispatched,
+ * in microseconds;</li>
+ * <li>the time spent in each receiver's {@code onReceive}, in microseconds;</li>
+ * <li>the number of receivers each broadcast was matched to;</li>
+ * <li>for ordered broadcasts which got consumed, the number of receivers run
+ * up to and including the one which consumed it.</li>
+ * </ul>
+ */
+public final class BroadcastInstrumentation {
+
+    /**
+     * Callback for receivers whose {@code onReceive} took longer than the
+     * threshold given to {@link BroadcastInstrumentation}. Called on the
+     * dispatching thread, right after the receiver returns.
+     */
+    public interface SlowReceiverListener {
+        void onSlowReceiver(LocalBroadcastReceiver receiver, Intent intent,
+                long durationMicros);
+    }
+
+    /**
+     * Statistics of one action. Instances returned by {@link #snapshot} are
+     * copies which do not change any more.
+     */
+    public static final class ActionStats {
+        final Histogram queueWaitMicros;
+        final Histogram receiverMicros;
+        final Histogram fanOut;
+        final Histogram consumptionDepth;
+
+        ActionStats() {
+            this(new Histogram(), new Histogram(), new Histogram(),
+                    new Histogram());
+        }
+
+        private ActionStats(Histogram _queueWaitMicros,
+                Histogram _receiverMicros, Histogram _fanOut,
+                Histogram _consumptionDepth) {
+            queueWaitMicros = _queueWaitMicros;
+            receiverMicros = _receiverMicros;
+            fanOut = _fanOut;
+            consumptionDepth = _consumptionDepth;
+        }
+
+        ActionStats copy() {
+            return new ActionStats(queueWaitMicros.copy(),
+                    receiverMicros.copy(), fanOut.copy(),
+                    consumptionDepth.copy());
+        }
+
+        /** Time between sending and dispatching, in microseconds. */
+        public Histogram getQueueWaitMicros() {
+            return queueWaitMicros;
+        }
+
+        /** Time spent in a single {@code onReceive}, in microseconds. */
+        public Histogram getReceiverMicros() {
+            return receiverMicros;
+        }
+
+        /** Number of receivers each broadcast was matched to. */
+        public Histogram getFanOut() {
+            return fanOut;
+        }
+
+        /**
+         * Number of receivers run for consumed ordered broadcasts, the
+         * consuming one included.
+         */
+        public Histogram getConsumptionDepth() {
+            return consumptionDepth;
+        }
+
+        @Override
+        public String toString() {
+            return "ActionStats{queueWait=" + queueWaitMicros + " receiver="
+                    + receiverMicros + " fanOut=" + fanOut
+                    + " consumptionDepth=" + consumptionDepth + "}";
+        }
+    }
+
+    /** Key used for broadcasts without an action. */
+    public static final String NO_ACTION = "";
+
+    private final ConcurrentHashMap<String, ActionStats> mStats = new ConcurrentHashMap<String, ActionStats>();
+    private final long mSlowReceiverThresholdMicros;
+    private final SlowReceiverListener mSlowReceiverListener;
+
+    public BroadcastInstrumentation() {
+        this(0, null);
+    }
+
+    /**
+     * @param slowReceiverThresholdMicros {@code listener} is told about every
+     *            {@code onReceive} which takes longer than this.
+     * @param listener May be null.
+     */
+    public BroadcastInstrumentation(long slowReceiverThresholdMicros,
+            SlowReceiverListener listener) {
+        mSlowReceiverThresholdMicros = slowReceiverThresholdMicros;
+        mSlowReceiverListener = listener;
+    }
+
+    /**
+     * Returns a copy of the statistics collected so far, per action.
+     */
+    public Map<String, ActionStats> snapshot() {
+        HashMap<String, ActionStats> snapshot = new HashMap<String, ActionStats>();
+        for (Map.Entry<String, ActionStats> entry : mStats.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().copy());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Discards the statistics collected so far.
+     */
+    public void reset() {
+        Iterator<ActionStats> stats = mStats.values().iterator();
+        while (stats.hasNext()) {
+            ActionStats actionStats = stats.next();
+            actionStats.queueWaitMicros.reset();
+            actionStats.receiverMicros.reset();
+            actionStats.fanOut.reset();
+            actionStats.consumptionDepth.reset();
+        }
+    }
+
+    ActionStats statsFor(String action) {
+        final String key = action != null ? action : NO_ACTION;
+        ActionStats stats = mStats.get(key);
+        if (stats == null) {
+            stats = new ActionStats();
+            ActionStats existing = mStats.putIfAbsent(key, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    void recordReceiver(ActionStats stats, LocalBroadcastReceiver receiver,
+            Intent intent, long durationMicros) {
+        stats.receiverMicros.record(durationMicros);
+        if (mSlowReceiverListener != null
+                && durationMicros > mSlowReceiverThresholdMicros) {
+            mSlowReceiverListener.onSlowReceiver(receiver, intent,
+                    durationMicros);
+        }
+    }
+}
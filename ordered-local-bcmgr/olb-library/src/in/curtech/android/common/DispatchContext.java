@@ -0,0 +1,104 @@
+package in.curtech.android.common;
+
+/**
+ * State of the broadcast currently being dispatched on a thread. Read and
+ * written by {@link LocalBroadcastReceiver} from within {@code onReceive}, and
+ * reset by {@link OrderEnabledLocalBroadcastManager} for every broadcast it
+ * dispatches.
+ * <p>
+ * There is one instance per dispatching thread, reused for every broadcast, so
+ * dispatching allocates nothing and a receiver registered once can be shared
+ * by broadcasts on several threads. Only a dispatch nested in another one's
+ * {@code onReceive} (through {@code sendBroadcastSync}) gets an instance of
+ * its own.
+ */
+final class DispatchContext {
+
+    private static final ThreadLocal<DispatchContext> sCurrent = new ThreadLocal<DispatchContext>() {
+        @Override
+        protected DispatchContext initialValue() {
+            return new DispatchContext(null);
+        }
+    };
+
+    /**
+     * Flag indicating whether the current broadcast has been consumed already.
+     * Analogous to mAbortBroadcast.
+     */
+    boolean consumed;
+
+    /**
+     * Result of the current broadcast; null unless it is an ordered one.
+     */
+    LocalResult result;
+
+    /**
+     * Reused as {@link #result} by ordered broadcasts sent without a result
+     * receiver, whose result nobody reads once the chain is done.
+     */
+    final LocalResult scratchResult = new LocalResult(0, null, null);
+
+    /** Manager and record of the current ordered broadcast, for deferring. */
+    OrderEnabledLocalBroadcastManager manager;
+    Object record;
+
+    /** Set by {@link #defer} while onReceive runs. */
+    PendingLocalResult deferred;
+
+    private final DispatchContext mOuter;
+    private boolean mActive;
+
+    private DispatchContext(DispatchContext outer) {
+        mOuter = outer;
+    }
+
+    static DispatchContext current() {
+        return sCurrent.get();
+    }
+
+    /**
+     * Returns the context for a broadcast about to be dispatched on this
+     * thread, reset. Must be paired with {@link #exit}.
+     */
+    static DispatchContext enter() {
+        DispatchContext context = sCurrent.get();
+        if (context.mActive) {
+            context = new DispatchContext(context);
+            sCurrent.set(context);
+        }
+        context.mActive = true;
+        context.consumed = false;
+        return context;
+    }
+
+    void exit() {
+        mActive = false;
+        result = null;
+        manager = null;
+        record = null;
+        deferred = null;
+        if (mOuter != null) {
+            sCurrent.set(mOuter);
+        }
+    }
+
+    PendingLocalResult defer() {
+        if (manager == null) {
+            throw new IllegalStateException(
+                    "Only ordered broadcasts can be deferred, from within onReceive");
+        }
+        if (deferred != null) {
+            throw new IllegalStateException("Broadcast already deferred");
+        }
+        if (result == scratchResult) {
+            // The scratch result is reused by the next broadcast; move on to
+            // one of the broadcast's own.
+            result = new LocalResult(result.code, result.data, result.extras);
+        }
+        deferred = new PendingLocalResult(manager, record, result);
+        if (consumed) {
+            deferred.consumeBroadcast();
+        }
+        return deferred;
+    }
+}
@@ -0,0 +1,118 @@
+package in.curtech.android.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket histogram of non-negative values, as recorded by
+ * {@link BroadcastInstrumentation}. Bucket {@code i} counts the values below
+ * {@code 2^i} which did not fit in bucket {@code i - 1}; the last bucket also
+ * takes everything larger.
+ * <p>
+ * Recording is lock-free and does not allocate.
+ */
+public final class Histogram {
+
+    /** Enough for microseconds up to about half a minute. */
+    static final int BUCKETS = 26;
+
+    private final AtomicLongArray mCounts;
+
+    Histogram() {
+        mCounts = new AtomicLongArray(BUCKETS);
+    }
+
+    private Histogram(AtomicLongArray counts) {
+        mCounts = counts;
+    }
+
+    void record(long value) {
+        int bucket = 64 - Long.numberOfLeadingZeros(value);
+        if (bucket >= BUCKETS) {
+            bucket = BUCKETS - 1;
+        }
+        mCounts.incrementAndGet(bucket);
+    }
+
+    /**
+     * Returns a copy of the counts recorded so far.
+     */
+    Histogram copy() {
+        AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, mCounts.get(i));
+        }
+        return new Histogram(counts);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.set(i, 0);
+        }
+    }
+
+    /**
+     * Returns the number of buckets.
+     */
+    public int getBucketCount() {
+        return BUCKETS;
+    }
+
+    /**
+     * Returns the exclusive upper bound of the values counted in bucket
+     * {@code i}, or {@code Long.MAX_VALUE} for the last bucket.
+     */
+    public long getUpperBound(int i) {
+        return i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+    }
+
+    /**
+     * Returns the number of values counted in bucket {@code i}.
+     */
+    public long getCount(int i) {
+        return mCounts.get(i);
+    }
+
+    /**
+     * Returns the number of values recorded altogether.
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += mCounts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile (between 0 and 100) of
+     * the recorded values, or 0 if nothing has been recorded.
+     */
+    public long getPercentileUpperBound(double percentile) {
+        final long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return getUpperBound(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(64);
+        builder.append("Histogram{count=");
+        builder.append(getTotalCount());
+        builder.append(" p50<");
+        builder.append(getPercentileUpperBound(50));
+        builder.append(" p99<");
+        builder.append(getPercentileUpperBound(99));
+        builder.append("}");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,450 @@
+package in.curtech.android.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.os.Parcel;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Connects an {@link OrderEnabledLocalBroadcastManager} to a peer manager in
+ * another process of the same app, over a {@code LocalSocket} or any pair of
+ * streams such as a pipe.
+ * <p>
+ * Broadcasts matching the bridge's IntentFilter are forwarded to the peer,
+ * which re-injects them as ordered broadcasts with
+ * {@link OrderEnabledLocalBroadcastManager#sendOrderedBroadcasts}. Whatever
+ * piles up while the connection is busy goes over as one batch: a length
+ * prefix followed by the parcelled Intents, so that a burst of remote events
+ * costs one write and one read rather than a system broadcast each. Each
+ * Intent is parcelled on its own: one which cannot be parcelled (it carries a
+ * Binder or a file descriptor, say), or read back by the peer, is dropped and
+ * counted without the rest of its batch.
+ * <p>
+ * Forwarded Intents carry {@link #EXTRA_FORWARDED} and are never forwarded
+ * again, so both ends may bridge the same actions without broadcasts
+ * bouncing back and forth.
+ * <p>
+ * Backpressure: at most {@link #QUEUE_CAPACITY} broadcasts wait to be
+ * written. Should the peer stop reading, newer broadcasts are dropped, and
+ * counted, rather than blocking the dispatch thread.
+ */
+public final class LocalBroadcastBridge implements Closeable {
+
+    private static final String TAG = "LocalBroadcastBridge";
+
+    /** Boolean extra set on broadcasts which came in through a bridge. */
+    public static final String EXTRA_FORWARDED = "in.curtech.android.common.extra.FORWARDED";
+
+    public static final int QUEUE_CAPACITY = 1024;
+
+    /** Broadcasts written in one batch at most. */
+    private static final int MAX_BATCH_SIZE = 64;
+
+    /**
+     * Largest batch written to or accepted from the peer, in bytes. Larger
+     * batches are split; a single Intent larger than that is dropped.
+     */
+    private static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+    private final OrderEnabledLocalBroadcastManager mManager;
+    private final IntentFilter mFilter;
+    private final DataInputStream mIn;
+    private final DataOutputStream mOut;
+    /** Closed along with the bridge; the socket, if any. May be null. */
+    private final Closeable mConnection;
+    private final ClassLoader mClassLoader;
+
+    private final ArrayBlockingQueue<Intent> mOutgoing;
+    private final AtomicLong mForwardedCount = new AtomicLong();
+    private final AtomicLong mReceivedCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicLong mRejectedCount = new AtomicLong();
+
+    /** Batch being put together by the writer; see {@link #writeBatch}. */
+    private final ByteArrayOutputStream mFrame = new ByteArrayOutputStream();
+    private final DataOutputStream mFrameOut = new DataOutputStream(mFrame);
+    /** Parcelled Intent being read by the reader. */
+    private byte[] mReadBuffer = new byte[1024];
+
+    private volatile boolean mClosed;
+    private Thread mWriter;
+    private Thread mReader;
+
+    private final LocalBroadcastReceiver mForwarder = new LocalBroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.hasExtra(EXTRA_FORWARDED) || mClosed) {
+                return;
+            }
+            // Copied: the sender may reuse its Intent before it is written.
+            if (!mOutgoing.offer(new Intent(intent))) {
+                mDroppedCount.incrementAndGet();
+            }
+        }
+    };
+
+    /**
+     * Creates a bridge over the given streams; nothing happens until
+     * {@link #start}.
+     *
+     * @param manager The manager whose broadcasts are forwarded, and into
+     *            which the peer's are re-injected.
+     * @param filter Selects the broadcasts to forward; its priority decides
+     *            where in the chain of an ordered broadcast forwarding
+     *            happens.
+     * @param in Stream the peer writes to.
+     * @param out Stream the peer reads from.
+     */
+    public LocalBroadcastBridge(OrderEnabledLocalBroadcastManager manager,
+            IntentFilter filter, InputStream in, OutputStream out) {
+        this(manager, filter, in, out, null);
+    }
+
+    private LocalBroadcastBridge(OrderEnabledLocalBroadcastManager manager,
+            IntentFilter filter, InputStream in, OutputStream out,
+            Closeable connection) {
+        mManager = manager;
+        mFilter = filter;
+        mIn = new DataInputStream(new BufferedInputStream(in));
+        mOut = new DataOutputStream(new BufferedOutputStream(out));
+        mConnection = connection;
+        mClassLoader = LocalBroadcastBridge.class.getClassLoader();
+        mOutgoing = new ArrayBlockingQueue<Intent>(QUEUE_CAPACITY);
+    }
+
+    /**
+     * Connects to the peer listening on the abstract socket {@code name}
+     * (see {@link #accept}) and returns the bridge, started.
+     *
+     * @throws IOException If the peer does not run as the same uid as this
+     *             process.
+     */
+    public static LocalBroadcastBridge connect(
+            OrderEnabledLocalBroadcastManager manager, IntentFilter filter,
+            String name) throws IOException {
+        final LocalSocket socket = new LocalSocket();
+        socket.connect(new LocalSocketAddress(name));
+        return startOver(manager, filter, socket);
+    }
+
+    /**
+     * Waits for a peer to {@link #connect} to {@code server} and returns the
+     * bridge to it, started.
+     *
+     * @throws IOException If the peer does not run as the same uid as this
+     *             process.
+     */
+    public static LocalBroadcastBridge accept(
+            OrderEnabledLocalBroadcastManager manager, IntentFilter filter,
+            LocalServerSocket server) throws IOException {
+        return startOver(manager, filter, server.accept());
+    }
+
+    private static LocalBroadcastBridge startOver(
+            OrderEnabledLocalBroadcastManager manager, IntentFilter filter,
+            final LocalSocket socket) throws IOException {
+        final LocalBroadcastBridge bridge;
+        try {
+            // Any app may connect to an abstract socket; only our own
+            // processes are let in.
+            final int uid = socket.getPeerCredentials().getUid();
+            if (uid != Process.myUid()) {
+                throw new IOException("Refusing peer with uid " + uid);
+            }
+            bridge = new LocalBroadcastBridge(manager, filter,
+                    socket.getInputStream(), socket.getOutputStream(),
+                    new Closeable() {
+                        @Override
+                        public void close() throws IOException {
+                            socket.close();
+                        }
+                    });
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        bridge.start();
+        return bridge;
+    }
+
+    /**
+     * Starts forwarding broadcasts to the peer and re-injecting the peer's.
+     * The bridge closes by itself when the connection is lost.
+     */
+    public synchronized void start() {
+        if (mWriter != null) {
+            throw new IllegalStateException("Already started");
+        }
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, TAG + "-writer");
+        mReader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readLoop();
+            }
+        }, TAG + "-reader");
+        mWriter.setDaemon(true);
+        mReader.setDaemon(true);
+        mManager.registerReceiver(mForwarder, mFilter);
+        mWriter.start();
+        mReader.start();
+    }
+
+    /**
+     * Stops forwarding and closes the connection. Broadcasts not written yet
+     * are discarded.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+        }
+        mManager.unregisterReceiver(mForwarder);
+        if (mWriter != null) {
+            mWriter.interrupt();
+        }
+        mOutgoing.clear();
+        closeQuietly(mConnection);
+        closeQuietly(mIn);
+        closeQuietly(mOut);
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /** Returns the number of broadcasts written to the peer. */
+    public long getForwardedCount() {
+        return mForwardedCount.get();
+    }
+
+    /** Returns the number of broadcasts received from the peer. */
+    public long getReceivedCount() {
+        return mReceivedCount.get();
+    }
+
+    /**
+     * Returns the number of broadcasts not forwarded because too many were
+     * waiting to be written already.
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * Returns the number of broadcasts dropped because they could not be
+     * parcelled, were too large for a batch, or could not be read back from
+     * the peer's.
+     */
+    public long getRejectedCount() {
+        return mRejectedCount.get();
+    }
+
+    private void writeLoop() {
+        final ArrayList<Intent> batch = new ArrayList<Intent>(MAX_BATCH_SIZE);
+        try {
+            while (!mClosed) {
+                batch.add(mOutgoing.take());
+                mOutgoing.drainTo(batch, MAX_BATCH_SIZE - 1);
+                writeBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Closed.
+        } catch (IOException e) {
+            if (!mClosed) {
+                Log.w(TAG, "Lost connection to peer while writing", e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Writes {@code batch} in as many frames as it takes to keep each within
+     * {@link #MAX_FRAME_SIZE}. A frame is its length, the number of Intents
+     * and then each parcelled Intent preceded by its own length.
+     */
+    private void writeBatch(ArrayList<Intent> batch) throws IOException {
+        final Parcel parcel = Parcel.obtain();
+        int count = 0;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                final byte[] bytes = marshall(parcel, batch.get(i));
+                if (bytes == null) {
+                    continue;
+                }
+                if (count > 0
+                        && 8 + mFrame.size() + bytes.length > MAX_FRAME_SIZE) {
+                    writeFrame(count);
+                    count = 0;
+                }
+                mFrameOut.writeInt(bytes.length);
+                mFrameOut.write(bytes);
+                count++;
+            }
+        } finally {
+            parcel.recycle();
+        }
+        if (count > 0) {
+            writeFrame(count);
+        }
+        mOut.flush();
+    }
+
+    /**
+     * Returns {@code intent} parcelled, or null if it cannot be forwarded.
+     */
+    private byte[] marshall(Parcel parcel, Intent intent) {
+        final byte[] bytes;
+        try {
+            parcel.setDataSize(0);
+            parcel.setDataPosition(0);
+            intent.writeToParcel(parcel, 0);
+            bytes = parcel.marshall();
+        } catch (RuntimeException e) {
+            // Binders and file descriptors cannot be marshalled, nor can
+            // values Parcel does not know how to write.
+            Log.w(TAG, "Not forwarding " + intent, e);
+            mRejectedCount.incrementAndGet();
+            return null;
+        }
+        if (8 + bytes.length > MAX_FRAME_SIZE) {
+            Log.w(TAG, "Not forwarding " + intent + ": " + bytes.length
+                    + " bytes parcelled");
+            mRejectedCount.incrementAndGet();
+            return null;
+        }
+        return bytes;
+    }
+
+    private void writeFrame(int count) throws IOException {
+        mOut.writeInt(4 + mFrame.size());
+        mOut.writeInt(count);
+        mFrame.writeTo(mOut);
+        mFrame.reset();
+        mForwardedCount.addAndGet(count);
+    }
+
+    private void readLoop() {
+        try {
+            while (!mClosed) {
+                final ArrayList<Intent> batch = readBatch();
+                if (!batch.isEmpty()) {
+                    mReceivedCount.addAndGet(batch.size());
+                    mManager.sendOrderedBroadcasts(batch);
+                }
+            }
+        } catch (IOException e) {
+            if (!mClosed) {
+                Log.w(TAG, "Lost connection to peer while reading", e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Reads a frame written by {@link #writeBatch}. A frame whose lengths do
+     * not add up is taken for a broken connection.
+     */
+    private ArrayList<Intent> readBatch() throws IOException {
+        final int length = mIn.readInt();
+        if (length < 4 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Bad batch length " + length);
+        }
+        final int count = mIn.readInt();
+        int remaining = length - 4;
+        if (count < 0 || count > remaining / 4) {
+            throw new IOException("Bad batch size " + count);
+        }
+        final ArrayList<Intent> batch = new ArrayList<Intent>(count);
+        final Parcel parcel = Parcel.obtain();
+        try {
+            for (int i = 0; i < count; i++) {
+                final int size = remaining >= 4 ? mIn.readInt() : -1;
+                remaining -= 4;
+                if (size < 0 || size > remaining) {
+                    throw new IOException("Corrupt batch: bad length " + size
+                            + " for Intent " + i + " of " + count);
+                }
+                remaining -= size;
+                if (mReadBuffer.length < size) {
+                    mReadBuffer = new byte[Math.max(size,
+                            mReadBuffer.length * 2)];
+                }
+                mIn.readFully(mReadBuffer, 0, size);
+                final Intent intent = unmarshall(parcel, mReadBuffer, size);
+                if (intent != null) {
+                    batch.add(intent);
+                }
+            }
+        } finally {
+            parcel.recycle();
+        }
+        if (remaining != 0) {
+            throw new IOException("Corrupt batch: " + remaining
+                    + " bytes left over");
+        }
+        return batch;
+    }
+
+    /**
+     * Returns the Intent parcelled in {@code bytes}, or null if it cannot be
+     * read.
+     */
+    private Intent unmarshall(Parcel parcel, byte[] bytes, int size) {
+        try {
+            parcel.unmarshall(bytes, 0, size);
+            parcel.setDataPosition(0);
+            final Intent intent = Intent.CREATOR.createFromParcel(parcel);
+            intent.setExtrasClassLoader(mClassLoader);
+            // Unparcels the extras, so that a bad one fails here rather than
+            // in a receiver.
+            intent.putExtra(EXTRA_FORWARDED, true);
+            return intent;
+        } catch (RuntimeException e) {
+            // BadParcelableException mostly; an extra of a class this side
+            // does not know, or a malformed Intent.
+            Log.w(TAG, "Dropping a broadcast which could not be read", e);
+            mRejectedCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing more to do.
+        }
+    }
+}
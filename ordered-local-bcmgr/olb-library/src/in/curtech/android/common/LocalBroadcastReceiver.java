@@ -2,28 +2,31 @@
 package in.curtech.android.common;
 
 import android.content.BroadcastReceiver;
+import android.os.Bundle;
 
 /**
  * Extension of {@code BroadcastReceiver} meant to be used in conjunction with
  * {@link OrderEnabledLocalBroadcastManager}
+ * <p>
+ * The consumed flag belongs to the broadcast being dispatched, not to the
+ * receiver: it is reset for every broadcast, so a receiver can be registered
+ * once and reused for any number of broadcasts.
+ * <p>
+ * The same goes for the result of ordered broadcasts. {@code BroadcastReceiver}
+ * keeps its own result methods final, hence the {@code setLocalResult*} and
+ * {@code getLocalResult*} names here.
  * 
  * @author Kiran Rao
  */
 public abstract class LocalBroadcastReceiver extends BroadcastReceiver {
 
     /**
-     * Flag indicating whether the broadcast has been consumed already.
-     * Analogous to mAbortBroadcast.
-     */
-    protected boolean mConsumeBroadcast;
-
-    
-    /**
-     * Returns the flag indicating whether or not this receiver should consume  the current broadcast.
-     * @return true if the broadcast should be consumed.s
+     * Returns the flag indicating whether or not the current broadcast has been consumed.
+     * Only meaningful from within {@code onReceive}.
+     * @return true if the broadcast should be consumed.
      */
     public final boolean isBroadcastConsumed() {
-        return mConsumeBroadcast;
+        return DispatchContext.current().consumed;
     }
 
     /**
@@ -34,14 +37,79 @@ public abstract class LocalBroadcastReceiver extends BroadcastReceiver {
      * This will prevent any other broadcast receivers from receiving the broadcast.
      */
     public final void consumeBroadcast() {
-        mConsumeBroadcast = true;
+        DispatchContext.current().consumed = true;
     }
 
     /**
      * Clears the flag indicating that this receiver should consume the current broadcast.
      */
     public final void clearConsumeBroadcast() {
-        mConsumeBroadcast = false;
+        DispatchContext.current().consumed = false;
+    }
+
+    /**
+     * Sets the result code passed on to the next receiver of the current
+     * ordered broadcast, and eventually to its {@link LocalResultReceiver}.
+     * 
+     * @throws IllegalStateException if not called from within
+     *             {@code onReceive} of an ordered broadcast.
+     */
+    public final void setLocalResultCode(int code) {
+        result().code = code;
+    }
+
+    public final int getLocalResultCode() {
+        return result().code;
+    }
+
+    public final void setLocalResultData(String data) {
+        result().data = data;
+    }
+
+    public final String getLocalResultData() {
+        return result().data;
+    }
+
+    public final void setLocalResultExtras(Bundle extras) {
+        result().extras = extras;
+    }
+
+    /**
+     * @param makeMap If true, an empty Bundle is created and returned if there
+     *            are no extras yet.
+     */
+    public final Bundle getLocalResultExtras(boolean makeMap) {
+        return result().extras(makeMap);
+    }
+
+    public final void setLocalResult(int code, String data, Bundle extras) {
+        result().set(code, data, extras);
+    }
+
+    /**
+     * Keeps the current ordered broadcast from moving on to the next receiver
+     * when {@code onReceive} returns, so that this receiver can finish its
+     * work on another thread without blocking the dispatch thread. The
+     * broadcast resumes once {@link PendingLocalResult#finish} is called on
+     * the returned object; until then its result is read and changed through
+     * that object.
+     * <p>
+     * Other broadcasts keep being dispatched meanwhile.
+     * 
+     * @throws IllegalStateException if not called from within
+     *             {@code onReceive} of an ordered broadcast.
+     */
+    public final PendingLocalResult deferBroadcast() {
+        return DispatchContext.current().defer();
+    }
+
+    private static LocalResult result() {
+        final LocalResult result = DispatchContext.current().result;
+        if (result == null) {
+            throw new IllegalStateException(
+                    "Only ordered broadcasts carry a result, from within onReceive");
+        }
+        return result;
     }
 
 }
@@ -0,0 +1,52 @@
+package in.curtech.android.common;
+
+/**
+ * Receiver of in-process events sent through
+ * {@link OrderEnabledLocalBroadcastManager#sendEvent} and
+ * {@link OrderEnabledLocalBroadcastManager#sendOrderedEvent}.
+ * <p>
+ * Events are plain objects, keyed by an action string or by their class; no
+ * {@code Intent}, {@code Bundle} or {@code IntentFilter} is involved. Ordered
+ * events reach receivers in priority order and stop at the one which consumes
+ * them, like ordered broadcasts do with {@link LocalBroadcastReceiver}.
+ *
+ * @param <T> Type of the events received.
+ */
+public abstract class LocalEventReceiver<T> {
+
+    /**
+     * Called on the manager's dispatch thread for each event sent with a key
+     * this receiver is registered for.
+     *
+     * @param key The action or the class the event was sent with.
+     * @param event The event itself; may be null for action-keyed events.
+     */
+    public abstract void onEvent(Object key, T event);
+
+    /**
+     * Returns the flag indicating whether or not the current event has been
+     * consumed. Only meaningful from within {@link #onEvent}.
+     */
+    public final boolean isEventConsumed() {
+        return DispatchContext.current().consumed;
+    }
+
+    /**
+     * Sets the flag indicating that this receiver consumes the current event;
+     * only works with events sent through
+     * {@code OrderEnabledLocalBroadcastManager.sendOrderedEvent}.
+     *
+     * This will prevent any other receivers from receiving the event.
+     */
+    public final void consumeEvent() {
+        DispatchContext.current().consumed = true;
+    }
+
+    /**
+     * Clears the flag indicating that this receiver consumes the current
+     * event.
+     */
+    public final void clearConsumeEvent() {
+        DispatchContext.current().consumed = false;
+    }
+}
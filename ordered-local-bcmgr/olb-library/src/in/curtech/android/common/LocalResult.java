@@ -0,0 +1,33 @@
+package in.curtech.android.common;
+
+import android.os.Bundle;
+
+/**
+ * Result code, data and extras carried along the receivers of an ordered
+ * broadcast, as set with {@link LocalBroadcastReceiver#setLocalResult} and
+ * friends.
+ */
+final class LocalResult {
+    int code;
+    String data;
+    Bundle extras;
+
+    LocalResult(int _code, String _data, Bundle _extras) {
+        code = _code;
+        data = _data;
+        extras = _extras;
+    }
+
+    void set(int _code, String _data, Bundle _extras) {
+        code = _code;
+        data = _data;
+        extras = _extras;
+    }
+
+    Bundle extras(boolean makeMap) {
+        if (extras == null && makeMap) {
+            extras = new Bundle();
+        }
+        return extras;
+    }
+}
@@ -0,0 +1,18 @@
+package in.curtech.android.common;
+
+import android.content.Intent;
+import android.os.Bundle;
+
+/**
+ * Final receiver of an ordered broadcast sent through
+ * {@link OrderEnabledLocalBroadcastManager#sendOrderedBroadcast(Intent, LocalResultReceiver, android.os.Handler, int, String, Bundle)}
+ * or
+ * {@link OrderEnabledLocalBroadcastManager#sendOrderedBroadcastOnExecutor(Intent, LocalResultReceiver, java.util.concurrent.Executor, int, String, Bundle)}.
+ * It is called once, after every receiver has run or one of them consumed the
+ * broadcast, with the result as left by the last receiver; the counterpart of
+ * the {@code resultReceiver} of {@code Context.sendOrderedBroadcast}.
+ */
+public interface LocalResultReceiver {
+    void onResult(Intent intent, int resultCode, String resultData,
+            Bundle resultExtras);
+}
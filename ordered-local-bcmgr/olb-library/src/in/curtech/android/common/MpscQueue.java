@@ -0,0 +1,137 @@
+package in.curtech.android.common;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi-producer/single-consumer queue used by
+ * {@link OrderEnabledLocalBroadcastManager} to hand pending broadcasts over to
+ * the dispatching thread.
+ * <p>
+ * Producers claim a slot in a ring buffer with a single CAS; the consumer
+ * reads slots in place, so draining neither locks nor copies. Each slot
+ * carries a sequence number telling whether it is free, published or being
+ * written (see Dmitry Vyukov's bounded queue).
+ * <p>
+ * Should the ring fill up, elements spill over into a locked list rather than
+ * blocking the producer or dropping the element. While the spill list is in
+ * use every producer goes to it, so the order in which a single thread
+ * enqueues is always the order in which its elements are polled.
+ * <p>
+ * {@link #offer} may be called from any thread; {@link #poll} from only one
+ * thread at a time.
+ */
+final class MpscQueue<E> {
+
+    private final AtomicReferenceArray<E> mBuffer;
+    private final AtomicLongArray mSequences;
+    private final int mMask;
+
+    /** Next slot to be claimed by a producer. */
+    private final AtomicLong mTail = new AtomicLong();
+
+    /** Next slot to be read by the consumer. */
+    private long mHead;
+
+    /** Guarded by itself. */
+    private final LinkedList<E> mOverflow = new LinkedList<E>();
+    private volatile boolean mOverflowing;
+
+    /**
+     * @param capacity Size of the ring; rounded up to a power of two.
+     */
+    MpscQueue(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mBuffer = new AtomicReferenceArray<E>(size);
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+        mMask = size - 1;
+    }
+
+    /**
+     * Appends {@code e} to the queue. Never blocks and never fails.
+     */
+    void offer(E e) {
+        if (!mOverflowing) {
+            while (true) {
+                final long tail = mTail.get();
+                final int index = (int) tail & mMask;
+                final long sequence = mSequences.get(index);
+                if (sequence == tail) {
+                    if (mTail.compareAndSet(tail, tail + 1)) {
+                        mBuffer.set(index, e);
+                        mSequences.set(index, tail + 1);
+                        return;
+                    }
+                } else if (sequence < tail) {
+                    // The consumer has not freed this slot yet: ring is full.
+                    break;
+                }
+                // Otherwise another producer claimed the slot first; retry.
+            }
+        }
+        synchronized (mOverflow) {
+            mOverflowing = true;
+            mOverflow.add(e);
+        }
+    }
+
+    /**
+     * Removes and returns the head of the queue, or null if there is nothing
+     * to consume right now. Must not be called concurrently with itself.
+     */
+    E poll() {
+        final int index = (int) mHead & mMask;
+        if (mSequences.get(index) == mHead + 1) {
+            final E e = mBuffer.get(index);
+            mBuffer.set(index, null);
+            mSequences.set(index, mHead + mMask + 1);
+            mHead++;
+            return e;
+        }
+        if (mTail.get() != mHead) {
+            // A producer has claimed the slot but not published it yet. It
+            // will schedule another drain once it has; the spill list must
+            // not be served ahead of it.
+            return null;
+        }
+        if (mOverflowing) {
+            synchronized (mOverflow) {
+                final E e = mOverflow.poll();
+                if (mOverflow.isEmpty()) {
+                    mOverflowing = false;
+                }
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if {@link #poll} would return null right now. Must not be
+     * called concurrently with {@link #poll}.
+     */
+    boolean isEmpty() {
+        if (mSequences.get((int) mHead & mMask) == mHead + 1) {
+            return false;
+        }
+        return mTail.get() != mHead || !mOverflowing;
+    }
+
+    /**
+     * Returns true if {@link #poll} is held up by a slot which a producer has
+     * claimed but not published yet. Must not be called concurrently with
+     * {@link #poll}.
+     */
+    boolean isPublishing() {
+        return mSequences.get((int) mHead & mMask) != mHead + 1
+                && mTail.get() != mHead;
+    }
+}
@@ -1,18 +1,35 @@
 
 package in.curtech.android.common;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.Uri;
+import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
@@ -34,19 +51,61 @@ import android.util.Log;
 public class OrderEnabledLocalBroadcastManager {
     private static class ReceiverRecord {
         final IntentFilter filter;
-        final LocalBroadcastReceiver receiver;
-        boolean broadcasting;
 
-        ReceiverRecord(IntentFilter _filter, LocalBroadcastReceiver _receiver) {
+        /** Keys of {@link #mActions} under which this record is listed. */
+        final Object[] indexKeys;
+
+        /**
+         * Priority of the filter when registered. The caller may change the
+         * filter afterwards; the sorted action lists must not notice.
+         */
+        final int priority;
+
+        /**
+         * Rank of the registration; among receivers of the same priority, the
+         * one registered last runs first.
+         */
+        final long sequence;
+
+        /** Null if registered weakly. */
+        private final LocalBroadcastReceiver strongReceiver;
+
+        /** Null if registered strongly. */
+        private final ReceiverReference weakReceiver;
+
+        ReceiverRecord(IntentFilter _filter, LocalBroadcastReceiver _receiver,
+                long _sequence) {
             filter = _filter;
-            receiver = _receiver;
+            indexKeys = IndexKey.keysFor(_filter);
+            priority = _filter.getPriority();
+            sequence = _sequence;
+            strongReceiver = _receiver;
+            weakReceiver = null;
+        }
+
+        ReceiverRecord(IntentFilter _filter, LocalBroadcastReceiver _receiver,
+                long _sequence, ReferenceQueue<LocalBroadcastReceiver> queue) {
+            filter = _filter;
+            indexKeys = IndexKey.keysFor(_filter);
+            priority = _filter.getPriority();
+            sequence = _sequence;
+            strongReceiver = null;
+            weakReceiver = new ReceiverReference(_receiver, queue, this);
+        }
+
+        /**
+         * Returns the receiver, or null if it was registered weakly and has
+         * been garbage collected since.
+         */
+        LocalBroadcastReceiver receiver() {
+            return strongReceiver != null ? strongReceiver : weakReceiver.get();
         }
 
         @Override
         public String toString() {
             StringBuilder builder = new StringBuilder(128);
             builder.append("Receiver{");
-            builder.append(receiver);
+            builder.append(receiver());
             builder.append(" filter=");
             builder.append(filter);
             builder.append("}");
@@ -54,10 +113,125 @@ public class OrderEnabledLocalBroadcastManager {
         }
     }
 
+    /**
+     * Key of {@link OrderEnabledLocalBroadcastManager#mActions} for filters
+     * which cannot be listed under a concrete action: wildcard actions, and
+     * filters without any action.
+     * <p>
+     * An action ending in {@code ".*"} matches every action starting with
+     * what precedes the {@code "*"}; the action {@code "*"} matches every
+     * action. Filters without actions only receive intents without an action.
+     * They are indexed by their data schemes, or else by their categories, so
+     * that only a fraction of them has to be matched for a given intent.
+     */
+    private static final class IndexKey {
+        /** Wildcard action; value is the prefix, up to and including the dot. */
+        static final int PREFIX = 0;
+        /** Action-less filter with data schemes; value is a scheme. */
+        static final int SCHEME = 1;
+        /** Action-less filter without schemes; value is a category. */
+        static final int CATEGORY = 2;
+        /** Every action-less filter without schemes but with categories. */
+        static final int CATEGORIZED = 3;
+        /** Action-less filter without schemes or categories. */
+        static final int ANY = 4;
+
+        final int kind;
+        final String value;
+
+        IndexKey(int _kind, String _value) {
+            kind = _kind;
+            value = _value;
+        }
+
+        /**
+         * Returns the prefix matched by a wildcard action, or null if
+         * {@code action} is a concrete one.
+         */
+        static String wildcardPrefix(String action) {
+            if (action.equals("*")) {
+                return "";
+            }
+            if (action.endsWith(".*")) {
+                return action.substring(0, action.length() - 1);
+            }
+            return null;
+        }
+
+        /**
+         * Returns the keys under which a record for {@code filter} has to be
+         * listed: its concrete actions as they are, plus IndexKeys.
+         */
+        static Object[] keysFor(IntentFilter filter) {
+            ArrayList<Object> keys = new ArrayList<Object>();
+            if (filter.countActions() > 0) {
+                for (int i = 0; i < filter.countActions(); i++) {
+                    String action = filter.getAction(i);
+                    String prefix = wildcardPrefix(action);
+                    keys.add(prefix == null ? action : new IndexKey(PREFIX,
+                            prefix));
+                }
+            } else if (filter.countDataSchemes() > 0) {
+                for (int i = 0; i < filter.countDataSchemes(); i++) {
+                    keys.add(new IndexKey(SCHEME, filter.getDataScheme(i)));
+                }
+            } else if (filter.countCategories() > 0) {
+                for (int i = 0; i < filter.countCategories(); i++) {
+                    keys.add(new IndexKey(CATEGORY, filter.getCategory(i)));
+                }
+                keys.add(new IndexKey(CATEGORIZED, null));
+            } else {
+                keys.add(new IndexKey(ANY, null));
+            }
+            return keys.toArray();
+        }
+
+        @Override
+        public int hashCode() {
+            return kind * 31 + (value != null ? value.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof IndexKey)) {
+                return false;
+            }
+            IndexKey other = (IndexKey) o;
+            return kind == other.kind
+                    && (value == null ? other.value == null : value
+                            .equals(other.value));
+        }
+
+        @Override
+        public String toString() {
+            return "IndexKey{" + kind + " " + value + "}";
+        }
+    }
+
+    /**
+     * Weak reference to a receiver registered through
+     * {@link OrderEnabledLocalBroadcastManager#registerWeakReceiver}, enqueued
+     * once the receiver is collected so that its record can be purged.
+     */
+    private static final class ReceiverReference extends
+            WeakReference<LocalBroadcastReceiver> {
+        final ReceiverRecord record;
+
+        ReceiverReference(LocalBroadcastReceiver receiver,
+                ReferenceQueue<LocalBroadcastReceiver> queue,
+                ReceiverRecord _record) {
+            super(receiver, queue);
+            record = _record;
+        }
+    }
+
     // Change by Kiran Rao
     /**
      * Comparator introduced for purpose of ordering the receivers according to
-     * the priority set in their intent filters.
+     * the priority set in their intent filters. Receivers with a higher
+     * priority sort first; among receivers with the same priority, the most
+     * recently registered one does, as when the ordered receivers used to be
+     * sorted in ascending order and walked backwards.
      * 
      * @author Kiran Rao
      */
@@ -66,311 +240,2441 @@ public class OrderEnabledLocalBroadcastManager {
 
         @Override
         public int compare(ReceiverRecord o1, ReceiverRecord o2) {
-            return o1.filter.getPriority() - o2.filter.getPriority();
+            // Explicit comparison rather than subtraction, which overflows for
+            // priorities near Integer.MIN_VALUE / Integer.MAX_VALUE.
+            final int p1 = o1.priority;
+            final int p2 = o2.priority;
+            if (p1 != p2) {
+                return p1 > p2 ? -1 : 1;
+            }
+            final long s1 = o1.sequence;
+            final long s2 = o2.sequence;
+            return s1 > s2 ? -1 : (s1 == s2 ? 0 : 1);
         }
 
     }
 
+    private static final ReceiverRecordComparator PRIORITY_ORDER = new ReceiverRecordComparator();
+
+    /**
+     * Order in which non-ordered broadcasts reach receivers: the order they
+     * registered in, as before the action lists were sorted by priority.
+     */
+    private static final Comparator<ReceiverRecord> REGISTRATION_ORDER = new Comparator<ReceiverRecord>() {
+        @Override
+        public int compare(ReceiverRecord o1, ReceiverRecord o2) {
+            final long s1 = o1.sequence;
+            final long s2 = o2.sequence;
+            return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+        }
+    };
+
     // End of change.
 
     private static class BroadcastRecord {
-        final Intent intent;
+        // intent, isOrdered and receivers are replaced by newer broadcasts
+        // while a coalesced record is pending; guarded by
+        // mCoalescedBroadcasts in that case.
+        Intent intent;
 
         // Change by Kiran Rao
         /**
          * Flag indicating that the broadcast is meant to be ordered.
          */
-        final boolean isOrdered;
+        boolean isOrdered;
         // End of change.
 
-        final ArrayList<ReceiverRecord> receivers;
+        ArrayList<ReceiverRecord> receivers;
+
+        /** Non-null if this record may be superseded while pending. */
+        final CoalescingKey coalescingKey;
+
+        /**
+         * System.nanoTime() when queued, if instrumentation was installed
+         * then; 0 otherwise.
+         */
+        long enqueueTime;
+
+        /**
+         * Next broadcast of the same batch; the records of a batch are queued
+         * and dispatched as one unit.
+         */
+        BroadcastRecord next;
+
+        /**
+         * Result carried along the receivers of an ordered broadcast; null
+         * unless sent with a result receiver or deferred by one of them.
+         */
+        LocalResult result;
+        LocalResultReceiver resultReceiver;
+        /** Runs resultReceiver; null to run it on the dispatch thread. */
+        Executor resultExecutor;
+
+        /**
+         * Index of the receiver an ordered broadcast continues with; past 0
+         * once a receiver deferred it.
+         */
+        int nextReceiver;
+
+        /** Dispatch lane; see {@link #LANE_NORMAL}. */
+        int lane = LANE_NORMAL;
+
+        /** Non-null for events sent through sendEvent; intent is null then. */
+        final EventRecord[] eventReceivers;
+        final Object eventKey;
+        final Object event;
 
         BroadcastRecord(Intent _intent, ArrayList<ReceiverRecord> _receivers,
-                boolean _isOrdered) {
+                boolean _isOrdered, CoalescingKey _coalescingKey) {
             intent = _intent;
             receivers = _receivers;
             isOrdered = _isOrdered;
+            coalescingKey = _coalescingKey;
+            eventReceivers = null;
+            eventKey = null;
+            event = null;
+        }
 
+        BroadcastRecord(Object _eventKey, Object _event,
+                EventRecord[] _eventReceivers, boolean _isOrdered) {
+            eventKey = _eventKey;
+            event = _event;
+            eventReceivers = _eventReceivers;
+            isOrdered = _isOrdered;
+            coalescingKey = null;
         }
     }
 
-    private static final String TAG = "OrderEnabledLocalBroadcastManager";
-    private static final boolean DEBUG = false;
+    /**
+     * Registration of a {@link LocalEventReceiver} for one event key.
+     */
+    private static final class EventRecord {
+        final Object key;
+        final int priority;
+        final LocalEventReceiver<Object> receiver;
 
-    private final Context mAppContext;
+        EventRecord(Object _key, int _priority,
+                LocalEventReceiver<Object> _receiver) {
+            key = _key;
+            priority = _priority;
+            receiver = _receiver;
+        }
+    }
 
-    private final HashMap<LocalBroadcastReceiver, ArrayList<IntentFilter>> mReceivers = new HashMap<LocalBroadcastReceiver, ArrayList<IntentFilter>>();
-    private final HashMap<String, ArrayList<ReceiverRecord>> mActions = new HashMap<String, ArrayList<ReceiverRecord>>();
+    /**
+     * Identifies the pending broadcast a coalesced broadcast supersedes: same
+     * action, equal caller-supplied key.
+     */
+    private static final class CoalescingKey {
+        final String action;
+        final Object key;
 
-    private final ArrayList<BroadcastRecord> mPendingBroadcasts = new ArrayList<BroadcastRecord>();
+        CoalescingKey(String _action, Object _key) {
+            action = _action;
+            key = _key;
+        }
 
-    static final int MSG_EXEC_PENDING_BROADCASTS = 1;
+        @Override
+        public int hashCode() {
+            return (action != null ? action.hashCode() : 0) * 31
+                    + (key != null ? key.hashCode() : 0);
+        }
 
-    private final Handler mHandler;
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CoalescingKey)) {
+                return false;
+            }
+            CoalescingKey other = (CoalescingKey) o;
+            return (action == null ? other.action == null : action
+                    .equals(other.action))
+                    && (key == null ? other.key == null : key.equals(other.key));
+        }
+    }
 
-    private static final Object mLock = new Object();
-    private static OrderEnabledLocalBroadcastManager mInstance;
+    /**
+     * The match-relevant fields of an Intent. Two intents with equal keys are
+     * matched by exactly the same filters.
+     * <p>
+     * Lookups go through a per-thread probe pointed at the Intent with
+     * {@link #set}, so that a cache hit allocates nothing; only keys stored
+     * in the cache are {@link #copy copies} of their own. For the same reason
+     * the categories are never iterated on a lookup: only their number goes
+     * into the hash, and a probe is compared to a stored key by looking up
+     * the stored categories in the probe's set.
+     */
+    private static final class MatchKey {
+        String action;
+        String type;
+        String scheme;
+        String authority;
+        String path;
+        /** The Intent's own set in a probe; null in a stored key. */
+        Set<String> categories;
+        /** Sorted copy of the categories in a stored key; null in a probe. */
+        String[] categoryArray;
+        /** No categories and an empty set match the same filters. */
+        int categoryCount;
+        int hashCode;
 
-    public static OrderEnabledLocalBroadcastManager getInstance(Context context) {
-        synchronized (mLock) {
-            if (mInstance == null) {
-                mInstance = new OrderEnabledLocalBroadcastManager(
-                        context.getApplicationContext());
+        /**
+         * Points this key at the fields of {@code intent}, without copying
+         * them.
+         */
+        MatchKey set(Intent intent, String _type) {
+            action = intent.getAction();
+            type = _type;
+            final Uri data = intent.getData();
+            scheme = intent.getScheme();
+            authority = data != null ? data.getAuthority() : null;
+            path = data != null ? data.getPath() : null;
+            categories = intent.getCategories();
+            categoryArray = null;
+            categoryCount = categories != null ? categories.size() : 0;
+            int h = hash(action);
+            h = 31 * h + hash(type);
+            h = 31 * h + hash(scheme);
+            h = 31 * h + hash(authority);
+            h = 31 * h + hash(path);
+            h = 31 * h + categoryCount;
+            hashCode = h;
+            return this;
+        }
+
+        /** Returns a copy of this key which may be kept. */
+        MatchKey copy() {
+            MatchKey copy = new MatchKey();
+            copy.action = action;
+            copy.type = type;
+            copy.scheme = scheme;
+            copy.authority = authority;
+            copy.path = path;
+            copy.categoryArray = categoryArray;
+            if (categoryArray == null && categoryCount > 0) {
+                copy.categoryArray = categories
+                        .toArray(new String[categoryCount]);
+                Arrays.sort(copy.categoryArray);
             }
-            return mInstance;
+            copy.categoryCount = categoryCount;
+            copy.hashCode = hashCode;
+            return copy;
         }
-    }
 
-    private OrderEnabledLocalBroadcastManager(Context context) {
-        mAppContext = context;
-        mHandler = new Handler(context.getMainLooper()) {
+        /** Lets go of the Intent a probe was pointed at. */
+        void clear() {
+            categories = null;
+        }
 
-            @Override
-            public void handleMessage(Message msg) {
-                switch (msg.what) {
-                    case MSG_EXEC_PENDING_BROADCASTS:
-                        executePendingBroadcasts();
-                        break;
-                    default:
-                        super.handleMessage(msg);
-                }
+        private static int hash(Object o) {
+            return o != null ? o.hashCode() : 0;
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
             }
-        };
-    }
+            if (!(o instanceof MatchKey)) {
+                return false;
+            }
+            MatchKey other = (MatchKey) o;
+            return hashCode == other.hashCode && equal(action, other.action)
+                    && equal(type, other.type) && equal(scheme, other.scheme)
+                    && equal(authority, other.authority)
+                    && equal(path, other.path)
+                    && categoryCount == other.categoryCount
+                    && sameCategories(other);
+        }
 
-    /**
-     * Register a receive for any local broadcasts that match the given
-     * IntentFilter.
-     * 
-     * @param receiver The LocalBroadcastReceiver to handle the broadcast.
-     * @param filter Selects the Intent broadcasts to be received.
-     * @see #unregisterReceiver
-     */
-    public void registerReceiver(LocalBroadcastReceiver receiver,
-            IntentFilter filter) {
-        synchronized (mReceivers) {
-            ReceiverRecord entry = new ReceiverRecord(filter, receiver);
-            ArrayList<IntentFilter> filters = mReceivers.get(receiver);
-            if (filters == null) {
-                filters = new ArrayList<IntentFilter>(1);
-                mReceivers.put(receiver, filters);
+        /** Assumes both keys have as many categories. */
+        private boolean sameCategories(MatchKey other) {
+            if (categoryCount == 0) {
+                return true;
+            }
+            if (categoryArray != null && other.categoryArray != null) {
+                return Arrays.equals(categoryArray, other.categoryArray);
             }
-            filters.add(filter);
-            for (int i = 0; i < filter.countActions(); i++) {
-                String action = filter.getAction(i);
-                ArrayList<ReceiverRecord> entries = mActions.get(action);
-                if (entries == null) {
-                    entries = new ArrayList<ReceiverRecord>(1);
-                    mActions.put(action, entries);
+            if (categoryArray != null) {
+                return containsAll(other.categories, categoryArray);
+            }
+            if (other.categoryArray != null) {
+                return containsAll(categories, other.categoryArray);
+            }
+            return categories.equals(other.categories);
+        }
+
+        private static boolean containsAll(Set<String> set, String[] array) {
+            for (int i = 0; i < array.length; i++) {
+                if (!set.contains(array[i])) {
+                    return false;
                 }
-                entries.add(entry);
             }
+            return true;
         }
     }
 
     /**
-     * Unregister a previously registered LocalBroadcastReceiver. <em>All</em>
-     * filters that have been registered for this BroadcastReceiver will be
-     * removed.
-     * 
-     * @param receiver The BroadcastReceiver to unregister.
-     * @see #registerReceiver
+     * Receivers matched for a {@link MatchKey}, valid only as long as the
+     * registry has not changed since they were matched.
      */
-    public void unregisterReceiver(LocalBroadcastReceiver receiver) {
-        synchronized (mReceivers) {
-            ArrayList<IntentFilter> filters = mReceivers.remove(receiver);
-            if (filters == null) {
-                return;
+    private static final class CachedMatch {
+        /** Value of {@link #mActionsVersion} read before matching. */
+        final int version;
+        /**
+         * In priority order, for ordered broadcasts. Null if nothing matched.
+         * Shared, never modified.
+         */
+        final ArrayList<ReceiverRecord> receivers;
+        /**
+         * The same in registration order, for the others; made on first use.
+         * Shared, never modified.
+         */
+        private volatile ArrayList<ReceiverRecord> registrationOrder;
+
+        CachedMatch(int _version, ArrayList<ReceiverRecord> _receivers) {
+            version = _version;
+            receivers = _receivers;
+        }
+
+        ArrayList<ReceiverRecord> receivers(boolean isOrdered) {
+            if (isOrdered) {
+                return receivers;
             }
-            for (int i = 0; i < filters.size(); i++) {
-                IntentFilter filter = filters.get(i);
-                for (int j = 0; j < filter.countActions(); j++) {
-                    String action = filter.getAction(j);
-                    ArrayList<ReceiverRecord> receivers = mActions.get(action);
-                    if (receivers != null) {
-                        for (int k = 0; k < receivers.size(); k++) {
-                            if (receivers.get(k).receiver == receiver) {
-                                receivers.remove(k);
-                                k--;
-                            }
-                        }
-                        if (receivers.size() <= 0) {
-                            mActions.remove(action);
-                        }
-                    }
-                }
+            ArrayList<ReceiverRecord> result = registrationOrder;
+            if (result == null) {
+                // Racing threads sort alike; any of their lists will do.
+                result = inRegistrationOrder(receivers);
+                registrationOrder = result;
             }
+            return result;
         }
     }
 
-    private boolean sendBroadcast(Intent intent, boolean isOrdered) {
-        synchronized (mReceivers) {
-            final String action = intent.getAction();
-            final String type = intent.resolveTypeIfNeeded(
-                    mAppContext.getContentResolver());
-            final Uri data = intent.getData();
-            final String scheme = intent.getScheme();
-            final Set<String> categories = intent.getCategories();
+    private static final String TAG = "OrderEnabledLocalBroadcastManager";
+    private static final boolean DEBUG = false;
 
-            final boolean debug = DEBUG
-                    ||
-                    ((intent.getFlags() & Intent.FLAG_DEBUG_LOG_RESOLUTION) != 0);
-            if (debug)
-                Log.v(
-                        TAG, "Resolving type " + type + " scheme " + scheme
-                                + " of intent " + intent);
+    private final Context mAppContext;
 
-            ArrayList<ReceiverRecord> entries = mActions
-                    .get(intent.getAction());
-            if (entries != null) {
-                if (debug)
-                    Log.v(TAG, "Action list: " + entries);
-
-                ArrayList<ReceiverRecord> receivers = null;
-                for (int i = 0; i < entries.size(); i++) {
-                    ReceiverRecord receiver = entries.get(i);
-                    if (debug)
-                        Log.v(TAG, "Matching against filter " + receiver.filter);
-
-                    if (receiver.broadcasting) {
-                        if (debug) {
-                            Log.v(TAG, "  Filter's target already added");
-                        }
-                        continue;
-                    }
+    /**
+     * Records registered per receiver: the reverse index of {@link #mActions},
+     * so that unregistering only visits what the receiver registered. Only
+     * touched by {@link #registerReceiver} and {@link #unregisterReceiver},
+     * which serialize on this map. Also guards {@link #mWeakReceivers} and
+     * {@link #mReclaimedCount}.
+     */
+    private final HashMap<LocalBroadcastReceiver, ArrayList<ReceiverRecord>> mReceivers = new HashMap<LocalBroadcastReceiver, ArrayList<ReceiverRecord>>();
 
-                    int match = receiver.filter.match(action, type, scheme,
-                            data,
-                            categories, "LocalBroadcastManager");
-                    if (match >= 0) {
-                        if (debug)
-                            Log.v(TAG, "  Filter matched!  match=0x" +
-                                    Integer.toHexString(match));
-                        if (receivers == null) {
-                            receivers = new ArrayList<ReceiverRecord>();
-                        }
-                        receivers.add(receiver);
-                        receiver.broadcasting = true;
-
-                    } else {
-                        if (debug) {
-                            String reason;
-                            switch (match) {
-                                case IntentFilter.NO_MATCH_ACTION:
-                                    reason = "action";
-                                    break;
-                                case IntentFilter.NO_MATCH_CATEGORY:
-                                    reason = "category";
-                                    break;
-                                case IntentFilter.NO_MATCH_DATA:
-                                    reason = "data";
-                                    break;
-                                case IntentFilter.NO_MATCH_TYPE:
-                                    reason = "type";
-                                    break;
-                                default:
-                                    reason = "unknown reason";
-                                    break;
-                            }
-                            Log.v(TAG, "  Filter did not match: " + reason);
-                        }
-                    }
-                }
+    /**
+     * Records registered per weakly referenced receiver. The records only
+     * reference their receiver weakly, so the map does not keep it alive.
+     */
+    private final WeakHashMap<LocalBroadcastReceiver, ArrayList<ReceiverRecord>> mWeakReceivers = new WeakHashMap<LocalBroadcastReceiver, ArrayList<ReceiverRecord>>();
 
-                if (receivers != null) {
-                    for (int i = 0; i < receivers.size(); i++) {
-                        receivers.get(i).broadcasting = false;
-                    }
-                    //Change by Kiran Rao.
-                    //Add the isOrdered boolean while constructing the BroadcastRecord.
-                    mPendingBroadcasts.add(new BroadcastRecord(intent,
-                            receivers, isOrdered));
-                    //End of change.
-                    if (!mHandler.hasMessages(MSG_EXEC_PENDING_BROADCASTS)) {
-                        mHandler.sendEmptyMessage(MSG_EXEC_PENDING_BROADCASTS);
-                    }
-                    return true;
-                }
-            }
-        }
-        return false;
+    /**
+     * Event registrations per event receiver. Guarded by {@link #mReceivers}.
+     */
+    private final HashMap<LocalEventReceiver<?>, ArrayList<EventRecord>> mEventReceivers = new HashMap<LocalEventReceiver<?>, ArrayList<EventRecord>>();
 
-    }
+    /**
+     * Copy-on-write snapshot of the event receivers per event key (action or
+     * class), sorted by priority like {@link #mActions}.
+     */
+    private final AtomicReference<HashMap<Object, EventRecord[]>> mEvents = new AtomicReference<HashMap<Object, EventRecord[]>>(
+            new HashMap<Object, EventRecord[]>());
+
+    /** Default bound of {@link #mStickyBroadcasts}, in bytes. */
+    private static final int DEFAULT_STICKY_CACHE_SIZE = 64 * 1024;
+
+    /** Guarded by {@link #mReceivers}. */
+    private final StickyBroadcastCache mStickyBroadcasts = new StickyBroadcastCache(
+            DEFAULT_STICKY_CACHE_SIZE);
+
+    /** Weakly registered receivers which have been garbage collected. */
+    private final ReferenceQueue<LocalBroadcastReceiver> mCollectedReceivers = new ReferenceQueue<LocalBroadcastReceiver>();
+
+    /** Number of records purged because their receiver was collected. */
+    private long mReclaimedCount;
+
+    /** Sequence of the last registration; guarded by {@link #mReceivers}. */
+    private long mRegistrationCount;
 
     /**
-     * Broadcast the given intent to all interested LocalBroadcastReceivers.
-     * This call is asynchronous; it returns immediately, and you will continue
-     * executing while the receivers are run.
-     * 
-     * @param intent The Intent to broadcast; all receivers matching this Intent
-     *            will receive the broadcast.
-     * @see #registerReceiver
+     * Number of weak registrations currently in {@link #mActions}. Written
+     * with the {@link #mReceivers} lock held; read by sends, which only poll
+     * {@link #mCollectedReceivers} while it is positive, since polling takes
+     * the queue's lock on Android even when it is empty.
      */
-    public boolean sendBroadcast(Intent intent) {
-        return sendBroadcast(intent, false);
-    }
+    private volatile int mWeakRecordCount;
 
-    public boolean sendOrderedBroadcast(Intent intent) {
-        return sendBroadcast(intent, true);
-    }
+    /**
+     * The receivers registered per action, each array sorted by priority.
+     * Filters with wildcard actions or without actions are listed under an
+     * {@link IndexKey} instead. A published array is never modified:
+     * registration changes replace the arrays of the keys they touch, and
+     * only those, so {@link #sendBroadcast(Intent, boolean, int)} can match
+     * without locking and unregistering costs what the receiver registered,
+     * not what the whole registry holds. Written with the
+     * {@link #mReceivers} lock held.
+     */
+    private final ConcurrentHashMap<Object, ReceiverRecord[]> mActions = new ConcurrentHashMap<Object, ReceiverRecord[]>();
 
     /**
-     * Like {@link #sendBroadcast(Intent)}, but if there are any receivers for
-     * the Intent this function will block and immediately dispatch them before
-     * returning.
+     * Bumped after every change of {@link #mActions}, once the change is
+     * complete; a cached match is valid as long as the version read before
+     * matching is current.
      */
-    public void sendBroadcastSync(Intent intent) {
-        if (sendBroadcast(intent)) {
-            executePendingBroadcasts();
+    private volatile int mActionsVersion;
+
+    private static final int MATCH_CACHE_SIZE = 64;
+    private static final int TYPE_CACHE_SIZE = 32;
+
+    /** Receivers matched per Intent shape; cleared on every registry change. */
+    private final BoundedLruCache<MatchKey, CachedMatch> mMatchCache = new BoundedLruCache<MatchKey, CachedMatch>(
+            MATCH_CACHE_SIZE);
+
+    private final AtomicLong mMatchCacheHits = new AtomicLong();
+    private final AtomicLong mMatchCacheMisses = new AtomicLong();
+
+    /** Reused for match cache lookups; see {@link MatchKey}. */
+    private static final ThreadLocal<MatchKey> mMatchProbe = new ThreadLocal<MatchKey>() {
+        @Override
+        protected MatchKey initialValue() {
+            return new MatchKey();
         }
-    }
+    };
 
-    private void executePendingBroadcasts() {
-        while (true) {
-            BroadcastRecord[] brs = null;
-            synchronized (mReceivers) {
-                final int N = mPendingBroadcasts.size();
-                if (N <= 0) {
-                    return;
-                }
-                brs = new BroadcastRecord[N];
-                mPendingBroadcasts.toArray(brs);
-                mPendingBroadcasts.clear();
-            }
-            for (int i = 0; i < brs.length; i++) {
+    /** MIME types resolved through the ContentResolver, per content Uri. */
+    private final BoundedLruCache<Uri, String> mTypeCache = new BoundedLruCache<Uri, String>(
+            TYPE_CACHE_SIZE);
 
-                BroadcastRecord br = brs[i];
+    /**
+     * The coalesced broadcasts which are still pending, by key. Also guards
+     * the fields of these records and {@link #mCoalescedCount}.
+     */
+    private final HashMap<CoalescingKey, BroadcastRecord> mCoalescedBroadcasts = new HashMap<CoalescingKey, BroadcastRecord>();
 
-                // Change by Kiran Rao
-                if (br.isOrdered) {
-                    // Do the sorting based on priority only if it is an ordered
-                    // broadcast.
-                    ReceiverRecord[] receiversAsArray = new ReceiverRecord[br.receivers
-                            .size()];
-                    br.receivers.toArray(receiversAsArray);
-
-                    Arrays.sort(receiversAsArray,
-                            new ReceiverRecordComparator());
-
-                    // Examine each receiver in turn and execute its onReceive
-                    // method;
-                    // provided the broadcast has not been consumed already.
-                    for (int j = receiversAsArray.length; j > 0; j--) {
-                        LocalBroadcastReceiver receiver = receiversAsArray[j - 1].receiver;
-                        receiver.onReceive(mAppContext, br.intent);
-                        if (receiver.isBroadcastConsumed()) {
-                            break;
-                        }
-                    }
-                } else {
-                    for (int j = 0; j < br.receivers.size(); j++) {
-                        br.receivers.get(j).receiver.onReceive(mAppContext,
-                                br.intent);
-                    }
+    /** Number of coalesced broadcasts dropped in favour of a newer one. */
+    private long mCoalescedCount;
 
-                }
-                // End of change
-            }
+    /**
+     * Capacity of the lock-free part of the pending queue. Bursts beyond this
+     * still get queued, only more slowly.
+     */
+    private static final int PENDING_QUEUE_CAPACITY = 256;
+
+    /**
+     * Dispatch lane for broadcasts which must not wait behind the backlog,
+     * such as a session expiring. Lanes are independent of receiver priority:
+     * they decide which broadcast is dispatched first, receiver priority
+     * decides which receiver gets it first.
+     */
+    public static final int LANE_URGENT = 0;
+
+    /** Dispatch lane of every broadcast not sent to another lane. */
+    public static final int LANE_NORMAL = 1;
+
+    /**
+     * Dispatch lane for high-volume, low-value broadcasts such as analytics
+     * or progress, which may wait until the other lanes are empty.
+     */
+    public static final int LANE_BULK = 2;
+
+    private static final int LANE_COUNT = 3;
+
+    /**
+     * Times a lane with broadcasts waiting may be passed over for a higher
+     * one before it gets to dispatch one anyway, so that a steady stream of
+     * urgent broadcasts does not starve the others.
+     */
+    private static final int MAX_LANE_SKIPS = 16;
+
+    /** Pending broadcasts, one queue per lane, highest lane first. */
+    private final MpscQueue<BroadcastRecord>[] mPendingBroadcasts = newLanes();
+
+    /** Times each lane was passed over in a row; guarded by mDrainLock. */
+    private final int[] mLaneSkips = new int[LANE_COUNT];
+
+    /** Broadcasts pending per lane; batches count as one. */
+    private final AtomicIntegerArray mLaneDepths = new AtomicIntegerArray(
+            LANE_COUNT);
+
+    /** Highest value of {@link #mLaneDepths} seen so far. */
+    private final AtomicIntegerArray mPeakLaneDepths = new AtomicIntegerArray(
+            LANE_COUNT);
+
+    /**
+     * Only one thread at a time may poll {@link #mPendingBroadcasts}; the
+     * dispatch thread normally, but {@link #sendBroadcastSync} drains on the
+     * caller's thread.
+     */
+    private final Object mDrainLock = new Object();
+
+    /**
+     * Set while a drain is posted or running, so that producers post at most
+     * one and drains never overlap, whatever the executor.
+     */
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+
+    /**
+     * Broadcasts a scheduled drain may dispatch before yielding; 0 for no
+     * limit.
+     */
+    private volatile int mDrainBudgetCount;
+
+    /**
+     * Milliseconds a scheduled drain may run before yielding; 0 for no limit.
+     */
+    private volatile long mDrainBudgetMillis;
+
+    /** Null unless dispatch statistics are being collected. */
+    private volatile BroadcastInstrumentation mInstrumentation;
+
+    /** Number of scheduled drains which yielded with broadcasts left. */
+    private final AtomicLong mYieldedDrainCount = new AtomicLong();
+
+    static final int MSG_EXEC_PENDING_BROADCASTS = 1;
+    static final int MSG_DELAYED_BROADCASTS_TICK = 2;
+
+    /**
+     * Resolution of delayed broadcasts, and number of ticks in a turn of
+     * their wheel; broadcasts due further out than a turn just wait for
+     * another.
+     */
+    private static final long DELAY_TICK_MILLIS = 10;
+    private static final int DELAY_WHEEL_SLOTS = 512;
+
+    /** Broadcasts sent with a delay; guarded by itself. */
+    private final TimerWheel mDelayedBroadcasts = new TimerWheel(
+            DELAY_WHEEL_SLOTS, DELAY_TICK_MILLIS, SystemClock.uptimeMillis());
+
+    /**
+     * Set while a tick of {@link #mDelayedBroadcasts} is posted, for uptime
+     * {@link #mTickTime}. Guarded by mDelayedBroadcasts, as is
+     * {@link #mTimerHandler}.
+     */
+    private boolean mTickScheduled;
+    private long mTickTime;
+
+    /**
+     * Posts the ticks; {@link #mHandler}, or a Handler on the main Looper when
+     * dispatching through {@link #mExecutor}. Created on first use.
+     */
+    private Handler mTimerHandler;
+
+    /** Broadcasts fired by the current tick; only used by the tick. */
+    private final ArrayList<TimerWheel.Timeout> mExpiredBroadcasts = new ArrayList<TimerWheel.Timeout>();
+
+    /** Null when dispatching through {@link #mExecutor}. */
+    private final Handler mHandler;
+
+    /** Null when dispatching on a Looper through {@link #mHandler}. */
+    private final Executor mExecutor;
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            drainScheduledBroadcasts();
+        }
+    };
+
+    /**
+     * Recycled records, so that steady dispatch allocates none. Each manager
+     * has its own, so that managers dispatching on different threads do not
+     * contend for it. Lock-free, like the rest of the send path: records are
+     * swapped in and out of the slots with compareAndSet, and a record sits
+     * in one slot at most, so there is no ABA problem to guard against as
+     * there would be with a linked stack popped by several senders.
+     */
+    private final AtomicReferenceArray<BroadcastRecord> mRecordPool = new AtomicReferenceArray<BroadcastRecord>(
+            MAX_RECORD_POOL_SIZE);
+    private static final int MAX_RECORD_POOL_SIZE = 32;
+
+    private static final Object mLock = new Object();
+    private static volatile OrderEnabledLocalBroadcastManager mInstance;
+
+    /** Named scopes, see {@link #getScope}. Guarded by {@link #mLock}. */
+    private static final HashMap<String, OrderEnabledLocalBroadcastManager> mScopes = new HashMap<String, OrderEnabledLocalBroadcastManager>();
+
+    public static OrderEnabledLocalBroadcastManager getInstance(Context context) {
+        OrderEnabledLocalBroadcastManager instance = mInstance;
+        if (instance != null) {
+            return instance;
+        }
+        synchronized (mLock) {
+            if (mInstance == null) {
+                mInstance = new OrderEnabledLocalBroadcastManager(
+                        context.getApplicationContext(),
+                        context.getMainLooper(), null);
+            }
+            return mInstance;
+        }
+    }
+
+    /**
+     * Returns the manager of the scope called {@code name}, creating it on
+     * the main Looper if need be.
+     * <p>
+     * Every scope has its own receivers, pending queue and dispatch, separate
+     * from those of {@link #getInstance} and of other scopes: a feature module
+     * or screen using its own scope neither contends with nor waits behind
+     * the broadcasts of unrelated ones. {@link #destroyScope} tears a scope
+     * down in one go.
+     * 
+     * @param context Any context; its application context is retained.
+     * @param name Name of the scope.
+     */
+    public static OrderEnabledLocalBroadcastManager getScope(Context context,
+            String name) {
+        synchronized (mLock) {
+            OrderEnabledLocalBroadcastManager scope = mScopes.get(name);
+            if (scope == null) {
+                scope = create(context, context.getMainLooper());
+                mScopes.put(name, scope);
+            }
+            return scope;
+        }
+    }
+
+    /**
+     * Unregisters all receivers of the scope called {@code name} and forgets
+     * the scope; a later {@link #getScope} with that name creates a new one.
+     * Does nothing if there is no such scope.
+     */
+    public static void destroyScope(String name) {
+        OrderEnabledLocalBroadcastManager scope;
+        synchronized (mLock) {
+            scope = mScopes.remove(name);
+        }
+        if (scope != null) {
+            scope.unregisterAllReceivers();
+            synchronized (scope.mDelayedBroadcasts) {
+                scope.mDelayedBroadcasts.clear();
+            }
+        }
+    }
+
+    /**
+     * Creates a manager, independent of the one returned by
+     * {@link #getInstance}, whose receivers are run on the given Looper
+     * instead of the main one.
+     * 
+     * @param context Any context; its application context is retained.
+     * @param looper The Looper on which {@code onReceive} will be called.
+     */
+    public static OrderEnabledLocalBroadcastManager create(Context context,
+            Looper looper) {
+        return new OrderEnabledLocalBroadcastManager(
+                context.getApplicationContext(), looper, null);
+    }
+
+    /**
+     * Creates a manager, independent of the one returned by
+     * {@link #getInstance}, whose receivers are run by the given Executor.
+     * <p>
+     * At most one dispatch task is submitted at a time, so even on a thread
+     * pool broadcasts are delivered one after the other, ordered broadcasts
+     * in priority order and up to the receiver that consumes them.
+     * 
+     * @param context Any context; its application context is retained.
+     * @param executor The Executor which will call {@code onReceive}.
+     */
+    public static OrderEnabledLocalBroadcastManager create(Context context,
+            Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("executor == null");
+        }
+        return new OrderEnabledLocalBroadcastManager(
+                context.getApplicationContext(), null, executor);
+    }
+
+    private OrderEnabledLocalBroadcastManager(Context context, Looper looper,
+            Executor executor) {
+        mAppContext = context;
+        mExecutor = executor;
+        if (executor != null) {
+            mHandler = null;
+            return;
+        }
+        mHandler = newHandler(looper);
+    }
+
+    private Handler newHandler(Looper looper) {
+        return new Handler(looper) {
+
+            @Override
+            public void handleMessage(Message msg) {
+                switch (msg.what) {
+                    case MSG_EXEC_PENDING_BROADCASTS:
+                        drainScheduledBroadcasts();
+                        break;
+                    case MSG_DELAYED_BROADCASTS_TICK:
+                        fireDelayedBroadcasts();
+                        break;
+                    default:
+                        super.handleMessage(msg);
+                }
+            }
+        };
+    }
+
+    /**
+     * Register a receive for any local broadcasts that match the given
+     * IntentFilter.
+     * <p>
+     * Besides concrete actions, the filter may list wildcard actions:
+     * {@code "com.example.sync.*"} stands for every action starting with
+     * {@code "com.example.sync."}, and {@code "*"} for any action. A filter
+     * without actions receives the broadcasts without an action which match
+     * its data and categories.
+     * 
+     * @param receiver The LocalBroadcastReceiver to handle the broadcast.
+     * @param filter Selects the Intent broadcasts to be received.
+     * @see #unregisterReceiver
+     */
+    public void registerReceiver(LocalBroadcastReceiver receiver,
+            IntentFilter filter) {
+        synchronized (mReceivers) {
+            register(new ReceiverRecord(filter, receiver, ++mRegistrationCount),
+                    receiver, mReceivers);
+        }
+    }
+
+    /**
+     * Like {@link #registerReceiver}, but the manager only keeps a weak
+     * reference to {@code receiver}: forgetting to unregister it does not keep
+     * it, or the Activity it belongs to, in memory. Once the receiver has been
+     * garbage collected its registration is purged the next time a broadcast
+     * is sent or a receiver (un)registered.
+     * <p>
+     * The caller has to keep a strong reference to {@code receiver} for as
+     * long as it should receive broadcasts.
+     * 
+     * @param receiver The LocalBroadcastReceiver to handle the broadcast.
+     * @param filter Selects the Intent broadcasts to be received.
+     * @see #unregisterReceiver
+     * @see #getReclaimedReceiverCount
+     */
+    public void registerWeakReceiver(LocalBroadcastReceiver receiver,
+            IntentFilter filter) {
+        synchronized (mReceivers) {
+            register(new ReceiverRecord(filter, receiver,
+                    ++mRegistrationCount, mCollectedReceivers), receiver,
+                    mWeakReceivers);
+            mWeakRecordCount++;
+        }
+    }
+
+    /**
+     * Unregisters every LocalBroadcastReceiver and LocalEventReceiver
+     * registered with this manager. Broadcasts already queued are still
+     * delivered, as they would be after {@link #unregisterReceiver}.
+     */
+    public void unregisterAllReceivers() {
+        synchronized (mReceivers) {
+            for (ArrayList<ReceiverRecord> records : mWeakReceivers.values()) {
+                for (int i = 0; i < records.size(); i++) {
+                    records.get(i).weakReceiver.clear();
+                }
+            }
+            mReceivers.clear();
+            mWeakReceivers.clear();
+            mWeakRecordCount = 0;
+            mEventReceivers.clear();
+            mActions.clear();
+            mActionsVersion++;
+            mEvents.set(new HashMap<Object, EventRecord[]>());
+            mMatchCache.clear();
+        }
+    }
+
+    /**
+     * Registers {@code receiver} for the events sent with {@code action} via
+     * {@link #sendEvent(String, Object)} or
+     * {@link #sendOrderedEvent(String, Object)}.
+     * 
+     * @param action The event key.
+     * @param receiver The receiver.
+     * @param priority Ordered events reach receivers with a higher priority
+     *            first, and among the same priority the most recently
+     *            registered first, as ordered broadcasts do.
+     * @see #unregisterEventReceiver
+     */
+    public void registerEventReceiver(String action,
+            LocalEventReceiver<?> receiver, int priority) {
+        registerEventReceiverForKey(action, receiver, priority);
+    }
+
+    /**
+     * Registers {@code receiver} for the events of class {@code eventClass}
+     * sent via {@link #sendEvent(Object)} or
+     * {@link #sendOrderedEvent(Object)}. Only the exact class counts, not its
+     * superclasses.
+     * 
+     * @param eventClass The event key.
+     * @param receiver The receiver.
+     * @param priority Ordered events reach receivers with a higher priority
+     *            first, and among the same priority the most recently
+     *            registered first, as ordered broadcasts do.
+     * @see #unregisterEventReceiver
+     */
+    public <T> void registerEventReceiver(Class<T> eventClass,
+            LocalEventReceiver<? super T> receiver, int priority) {
+        registerEventReceiverForKey(eventClass, receiver, priority);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void registerEventReceiverForKey(Object key,
+            LocalEventReceiver<?> receiver, int priority) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        synchronized (mReceivers) {
+            EventRecord entry = new EventRecord(key, priority,
+                    (LocalEventReceiver<Object>) receiver);
+            ArrayList<EventRecord> records = mEventReceivers.get(receiver);
+            if (records == null) {
+                records = new ArrayList<EventRecord>(1);
+                mEventReceivers.put(receiver, records);
+            }
+            records.add(entry);
+            HashMap<Object, EventRecord[]> events = new HashMap<Object, EventRecord[]>(
+                    mEvents.get());
+            EventRecord[] entries = events.get(key);
+            if (entries == null) {
+                entries = new EventRecord[0];
+            }
+            // Higher priority first; among the same priority the most
+            // recently registered first, as with PRIORITY_ORDER.
+            int position = 0;
+            while (position < entries.length
+                    && entries[position].priority > priority) {
+                position++;
+            }
+            EventRecord[] result = new EventRecord[entries.length + 1];
+            System.arraycopy(entries, 0, result, 0, position);
+            result[position] = entry;
+            System.arraycopy(entries, position, result, position + 1,
+                    entries.length - position);
+            events.put(key, result);
+            mEvents.set(events);
+        }
+    }
+
+    /**
+     * Unregisters a previously registered LocalEventReceiver from all the
+     * keys it has been registered for.
+     * 
+     * @param receiver The receiver to unregister.
+     */
+    public void unregisterEventReceiver(LocalEventReceiver<?> receiver) {
+        synchronized (mReceivers) {
+            ArrayList<EventRecord> records = mEventReceivers.remove(receiver);
+            if (records == null) {
+                return;
+            }
+            HashMap<Object, EventRecord[]> events = new HashMap<Object, EventRecord[]>(
+                    mEvents.get());
+            for (int i = 0; i < records.size(); i++) {
+                EventRecord record = records.get(i);
+                EventRecord[] entries = events.get(record.key);
+                int index = 0;
+                while (entries[index] != record) {
+                    index++;
+                }
+                if (entries.length == 1) {
+                    events.remove(record.key);
+                    continue;
+                }
+                EventRecord[] result = new EventRecord[entries.length - 1];
+                System.arraycopy(entries, 0, result, 0, index);
+                System.arraycopy(entries, index + 1, result, index,
+                        result.length - index);
+                events.put(record.key, result);
+            }
+            mEvents.set(events);
+        }
+    }
+
+    /**
+     * Returns the number of weak registrations which have been purged because
+     * their receiver was garbage collected.
+     */
+    public long getReclaimedReceiverCount() {
+        synchronized (mReceivers) {
+            return mReclaimedCount;
+        }
+    }
+
+    /**
+     * Adds {@code entry} to the registry. Must be called with the
+     * {@link #mReceivers} lock held.
+     */
+    private void register(ReceiverRecord entry,
+            LocalBroadcastReceiver receiver,
+            Map<LocalBroadcastReceiver, ArrayList<ReceiverRecord>> receivers) {
+        purgeCollectedReceivers();
+        ArrayList<ReceiverRecord> records = receivers.get(receiver);
+        if (records == null) {
+            records = new ArrayList<ReceiverRecord>(1);
+            receivers.put(receiver, records);
+        }
+        records.add(entry);
+        for (int i = 0; i < entry.indexKeys.length; i++) {
+            Object key = entry.indexKeys[i];
+            // Keep each action list sorted by priority so that ordered
+            // broadcasts can be dispatched without sorting.
+            mActions.put(key, insert(mActions.get(key), entry));
+        }
+        mActionsVersion++;
+        mMatchCache.clear();
+        replayStickyBroadcasts(entry);
+    }
+
+    /**
+     * Queues the sticky broadcasts matching {@code entry} for delivery to it
+     * alone. Must be called with the {@link #mReceivers} lock held, which
+     * sticky sends hold as well: a sticky broadcast sent concurrently is
+     * delivered to the new receiver exactly once, either here or by the send.
+     */
+    private void replayStickyBroadcasts(ReceiverRecord entry) {
+        if (mStickyBroadcasts.isEmpty()) {
+            return;
+        }
+        final ArrayList<StickyBroadcastCache.Entry> stickies = mStickyBroadcasts
+                .entries();
+        for (int i = 0; i < stickies.size(); i++) {
+            final StickyBroadcastCache.Entry sticky = stickies.get(i);
+            final Intent intent = sticky.intent;
+            final String action = matchingAction(entry.filter,
+                    intent.getAction());
+            if (action == null
+                    && (intent.getAction() != null || entry.filter
+                            .countActions() > 0)) {
+                // An Intent without an action only goes to filters without
+                // any, as on a send.
+                continue;
+            }
+            if (entry.filter.match(action, resolveType(intent),
+                    intent.getScheme(), intent.getData(),
+                    intent.getCategories(), TAG) < 0) {
+                continue;
+            }
+            ArrayList<ReceiverRecord> receivers = new ArrayList<ReceiverRecord>(
+                    1);
+            receivers.add(entry);
+            enqueue(obtainRecord(intent, receivers, sticky.isOrdered));
+            mStickyBroadcasts.touch(intent.getAction());
+        }
+    }
+
+    /**
+     * Returns the action of {@code filter} which covers {@code action}: the
+     * action itself or a wildcard. Null if there is none, or if
+     * {@code action} is null.
+     */
+    private static String matchingAction(IntentFilter filter, String action) {
+        if (action == null) {
+            return null;
+        }
+        if (filter.hasAction(action)) {
+            return action;
+        }
+        for (int i = 0; i < filter.countActions(); i++) {
+            final String wildcard = filter.getAction(i);
+            final String prefix = IndexKey.wildcardPrefix(wildcard);
+            if (prefix != null && action.startsWith(prefix)) {
+                return wildcard;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the index of the first record in {@code entries} which does not
+     * sort before {@code entry}: its position if present, or where it would
+     * be inserted.
+     */
+    private static int lowerBound(ReceiverRecord[] entries, ReceiverRecord entry) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (PRIORITY_ORDER.compare(entries[mid], entry) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the position of {@code entry} in {@code entries}, or -1.
+     */
+    private static int indexOf(ReceiverRecord[] entries, ReceiverRecord entry) {
+        final int i = lowerBound(entries, entry);
+        return i < entries.length && entries[i] == entry ? i : -1;
+    }
+
+    /**
+     * Returns a copy of {@code entries} with {@code entry} inserted at the
+     * position that keeps the array sorted by {@link #PRIORITY_ORDER}. If
+     * {@code entry} is already present (a filter listing the same action
+     * twice), {@code entries} is returned as is.
+     */
+    private static ReceiverRecord[] insert(ReceiverRecord[] entries,
+            ReceiverRecord entry) {
+        if (entries == null) {
+            return new ReceiverRecord[] {
+                    entry
+            };
+        }
+        final int position = lowerBound(entries, entry);
+        if (position < entries.length && entries[position] == entry) {
+            return entries;
+        }
+        ReceiverRecord[] result = new ReceiverRecord[entries.length + 1];
+        System.arraycopy(entries, 0, result, 0, position);
+        result[position] = entry;
+        System.arraycopy(entries, position, result, position + 1,
+                entries.length - position);
+        return result;
+    }
+
+    /**
+     * Returns a copy of {@code entries} without {@code entry};
+     * {@code entries} itself if it does not contain {@code entry}, or null if
+     * no records would remain.
+     */
+    private static ReceiverRecord[] remove(ReceiverRecord[] entries,
+            ReceiverRecord entry) {
+        final int index = indexOf(entries, entry);
+        if (index < 0) {
+            return entries;
+        }
+        if (entries.length == 1) {
+            return null;
+        }
+        ReceiverRecord[] result = new ReceiverRecord[entries.length - 1];
+        System.arraycopy(entries, 0, result, 0, index);
+        System.arraycopy(entries, index + 1, result, index, result.length
+                - index);
+        return result;
+    }
+
+    /**
+     * Unregister a previously registered LocalBroadcastReceiver. <em>All</em>
+     * filters that have been registered for this BroadcastReceiver will be
+     * removed.
+     * 
+     * @param receiver The BroadcastReceiver to unregister.
+     * @see #registerReceiver
+     */
+    public void unregisterReceiver(LocalBroadcastReceiver receiver) {
+        synchronized (mReceivers) {
+            purgeCollectedReceivers();
+            ArrayList<ReceiverRecord> records = mReceivers.remove(receiver);
+            ArrayList<ReceiverRecord> weakRecords = mWeakReceivers
+                    .remove(receiver);
+            if (records == null && weakRecords == null) {
+                return;
+            }
+            if (records != null) {
+                for (int i = 0; i < records.size(); i++) {
+                    removeFromActions(records.get(i));
+                }
+            }
+            if (weakRecords != null) {
+                for (int i = 0; i < weakRecords.size(); i++) {
+                    ReceiverRecord record = weakRecords.get(i);
+                    removeFromActions(record);
+                    // Already gone; keep it from being purged again.
+                    record.weakReceiver.clear();
+                }
+                mWeakRecordCount -= weakRecords.size();
+            }
+            mActionsVersion++;
+            mMatchCache.clear();
+        }
+    }
+
+    /**
+     * Removes {@code record} from the lists of all actions of its filter.
+     * 
+     * @return true if it was registered for any of them.
+     */
+    private boolean removeFromActions(ReceiverRecord record) {
+        boolean removed = false;
+        for (int j = 0; j < record.indexKeys.length; j++) {
+            Object key = record.indexKeys[j];
+            ReceiverRecord[] receivers = mActions.get(key);
+            if (receivers != null) {
+                ReceiverRecord[] remaining = remove(receivers, record);
+                if (remaining == null) {
+                    mActions.remove(key);
+                } else if (remaining != receivers) {
+                    mActions.put(key, remaining);
+                }
+                removed |= remaining != receivers;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Drops the records of weakly registered receivers which have been
+     * garbage collected. Must be called with the {@link #mReceivers} lock
+     * held.
+     */
+    private void purgeCollectedReceivers() {
+        purgeCollectedReceivers((ReceiverReference) mCollectedReceivers.poll());
+    }
+
+    /**
+     * Like {@link #purgeCollectedReceivers()}, starting with a reference
+     * already polled from {@link #mCollectedReceivers}.
+     */
+    private void purgeCollectedReceivers(ReceiverReference reference) {
+        if (reference == null) {
+            return;
+        }
+        do {
+            if (removeFromActions(reference.record)) {
+                mReclaimedCount++;
+                mWeakRecordCount--;
+            }
+        } while ((reference = (ReceiverReference) mCollectedReceivers.poll()) != null);
+        mActionsVersion++;
+        mMatchCache.clear();
+    }
+
+    private boolean sendBroadcast(Intent intent, boolean isOrdered, int lane) {
+        ArrayList<ReceiverRecord> receivers = resolveReceivers(intent,
+                isOrdered);
+        if (receivers != null) {
+            //Change by Kiran Rao.
+            //Add the isOrdered boolean while constructing the BroadcastRecord.
+            BroadcastRecord record = obtainRecord(intent, receivers, isOrdered);
+            //End of change.
+            record.lane = lane;
+            enqueue(record);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Queues {@code record}, along with the records of its batch, and makes
+     * sure they get dispatched.
+     */
+    private void enqueue(BroadcastRecord record) {
+        if (mInstrumentation != null) {
+            final long now = System.nanoTime();
+            for (BroadcastRecord r = record; r != null; r = r.next) {
+                r.enqueueTime = now;
+            }
+        }
+        final int lane = record.lane;
+        final int depth = mLaneDepths.incrementAndGet(lane);
+        int peak;
+        while (depth > (peak = mPeakLaneDepths.get(lane))
+                && !mPeakLaneDepths.compareAndSet(lane, peak, depth)) {
+            // Lost to a concurrent enqueue; look again.
+        }
+        mPendingBroadcasts[lane].offer(record);
+        scheduleDrain();
+    }
+
+    /**
+     * Returns a record for an Intent broadcast, from the pool if it has one.
+     * Coalesced broadcasts, whose records are looked up while pending, get
+     * records of their own instead.
+     */
+    private BroadcastRecord obtainRecord(Intent intent,
+            ArrayList<ReceiverRecord> receivers, boolean isOrdered) {
+        final AtomicReferenceArray<BroadcastRecord> pool = mRecordPool;
+        for (int i = 0; i < MAX_RECORD_POOL_SIZE; i++) {
+            final BroadcastRecord record = pool.get(i);
+            if (record != null && pool.compareAndSet(i, record, null)) {
+                record.intent = intent;
+                record.receivers = receivers;
+                record.isOrdered = isOrdered;
+                return record;
+            }
+        }
+        return new BroadcastRecord(intent, receivers, isOrdered, null);
+    }
+
+    /**
+     * Returns {@code record} to the pool once it has been dispatched for good.
+     * Nothing may refer to it any more: the dispatch loop has read its
+     * {@code next} already, and a deferred record only comes here after it
+     * has been resumed and finished.
+     */
+    private void recycle(BroadcastRecord record) {
+        record.intent = null;
+        record.receivers = null;
+        record.isOrdered = false;
+        record.enqueueTime = 0;
+        record.result = null;
+        record.resultReceiver = null;
+        record.resultExecutor = null;
+        record.nextReceiver = 0;
+        record.lane = LANE_NORMAL;
+        record.next = null;
+        // Lowest slots first, where obtainRecord looks first.
+        final AtomicReferenceArray<BroadcastRecord> pool = mRecordPool;
+        for (int i = 0; i < MAX_RECORD_POOL_SIZE; i++) {
+            if (pool.get(i) == null && pool.compareAndSet(i, null, record)) {
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings({
+            "unchecked", "rawtypes"
+    })
+    private static MpscQueue<BroadcastRecord>[] newLanes() {
+        MpscQueue<BroadcastRecord>[] lanes = new MpscQueue[LANE_COUNT];
+        for (int i = 0; i < LANE_COUNT; i++) {
+            lanes[i] = new MpscQueue<BroadcastRecord>(PENDING_QUEUE_CAPACITY);
+        }
+        return lanes;
+    }
+
+    /**
+     * Takes the next broadcast to dispatch: from the highest lane which has
+     * one, unless a lower lane has been passed over too often. Must hold
+     * {@link #mDrainLock}.
+     */
+    private BroadcastRecord pollPendingBroadcast() {
+        for (int lane = LANE_COUNT - 1; lane > 0; lane--) {
+            if (mLaneSkips[lane] >= MAX_LANE_SKIPS) {
+                mLaneSkips[lane] = 0;
+                BroadcastRecord br = mPendingBroadcasts[lane].poll();
+                if (br != null) {
+                    mLaneDepths.decrementAndGet(lane);
+                    return br;
+                }
+            }
+        }
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            BroadcastRecord br = mPendingBroadcasts[lane].poll();
+            if (br != null) {
+                mLaneDepths.decrementAndGet(lane);
+                mLaneSkips[lane] = 0;
+                for (int lower = lane + 1; lower < LANE_COUNT; lower++) {
+                    if (!mPendingBroadcasts[lower].isEmpty()) {
+                        mLaneSkips[lower]++;
+                    }
+                }
+                return br;
+            }
+        }
+        return null;
+    }
+
+    /** Must hold {@link #mDrainLock}. */
+    private boolean isPendingEmpty() {
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            if (!mPendingBroadcasts[lane].isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Yields if a pending broadcast is still being published.
+     *
+     * @return true if it did, and the queue should be drained again.
+     */
+    private boolean awaitPendingPublished() {
+        synchronized (mDrainLock) {
+            boolean publishing = false;
+            for (int lane = 0; lane < LANE_COUNT && !publishing; lane++) {
+                publishing = mPendingBroadcasts[lane].isPublishing();
+            }
+            if (!publishing) {
+                return false;
+            }
+        }
+        Thread.yield();
+        return true;
+    }
+
+    private static void checkLane(int lane) {
+        if (lane < 0 || lane >= LANE_COUNT) {
+            throw new IllegalArgumentException("Unknown lane: " + lane);
+        }
+    }
+
+    /**
+     * Returns the number of broadcasts waiting in {@code lane} to be
+     * dispatched; a batch counts as one.
+     * 
+     * @param lane One of {@link #LANE_URGENT}, {@link #LANE_NORMAL} and
+     *            {@link #LANE_BULK}.
+     */
+    public int getPendingBroadcastCount(int lane) {
+        checkLane(lane);
+        return mLaneDepths.get(lane);
+    }
+
+    /**
+     * Returns the highest number of broadcasts seen waiting in {@code lane}
+     * at once.
+     * 
+     * @see #getPendingBroadcastCount
+     */
+    public int getPeakPendingBroadcastCount(int lane) {
+        checkLane(lane);
+        return mPeakLaneDepths.get(lane);
+    }
+
+    private boolean sendBroadcasts(Collection<Intent> intents,
+            boolean isOrdered) {
+        purgeCollectedReceiversIfAny();
+        BroadcastRecord head = null;
+        BroadcastRecord tail = null;
+        for (Intent intent : intents) {
+            ArrayList<ReceiverRecord> receivers = matchReceivers(intent,
+                    isOrdered);
+            if (receivers == null) {
+                continue;
+            }
+            BroadcastRecord record = obtainRecord(intent, receivers, isOrdered);
+            if (head == null) {
+                head = record;
+            } else {
+                tail.next = record;
+            }
+            tail = record;
+        }
+        if (head == null) {
+            return false;
+        }
+        enqueue(head);
+        return true;
+    }
+
+    private boolean sendCoalescedBroadcast(Intent intent, Object key,
+            boolean isOrdered) {
+        ArrayList<ReceiverRecord> receivers = resolveReceivers(intent,
+                isOrdered);
+        if (receivers == null) {
+            return false;
+        }
+        final CoalescingKey coalescingKey = new CoalescingKey(
+                intent.getAction(), key);
+        final BroadcastRecord record;
+        synchronized (mCoalescedBroadcasts) {
+            BroadcastRecord pending = mCoalescedBroadcasts.get(coalescingKey);
+            if (pending != null) {
+                pending.intent = intent;
+                pending.receivers = receivers;
+                pending.isOrdered = isOrdered;
+                mCoalescedCount++;
+                return true;
+            }
+            record = new BroadcastRecord(intent, receivers, isOrdered,
+                    coalescingKey);
+            mCoalescedBroadcasts.put(coalescingKey, record);
+        }
+        enqueue(record);
+        return true;
+    }
+
+    /**
+     * Purges collected weak receivers, if there are any. Costs a volatile
+     * read when nothing is registered weakly.
+     */
+    private void purgeCollectedReceiversIfAny() {
+        if (mWeakRecordCount == 0) {
+            return;
+        }
+        final ReceiverReference collected = (ReceiverReference) mCollectedReceivers
+                .poll();
+        if (collected != null) {
+            synchronized (mReceivers) {
+                purgeCollectedReceivers(collected);
+            }
+        }
+    }
+
+    /**
+     * Returns the receivers matching {@code intent}, or null if there are
+     * none, after purging collected weak receivers. The list must not be
+     * modified.
+     * 
+     * @param isOrdered Whether the receivers are for an ordered broadcast,
+     *            which runs them in priority order; other broadcasts reach
+     *            them in registration order.
+     */
+    private ArrayList<ReceiverRecord> resolveReceivers(Intent intent,
+            boolean isOrdered) {
+        purgeCollectedReceiversIfAny();
+        return matchReceivers(intent, isOrdered);
+    }
+
+    /**
+     * Same as {@link #resolveReceivers(Intent, boolean)}, without purging.
+     */
+    private ArrayList<ReceiverRecord> matchReceivers(Intent intent,
+            boolean isOrdered) {
+        // Read before matching: if the registry changes meanwhile, what gets
+        // cached below is stale as soon as the change is complete.
+        final int version = mActionsVersion;
+        final String type = resolveType(intent);
+        final boolean debug = DEBUG
+                ||
+                ((intent.getFlags() & Intent.FLAG_DEBUG_LOG_RESOLUTION) != 0);
+
+        ArrayList<ReceiverRecord> receivers;
+        if (debug) {
+            // Bypass the cache so that the resolution gets logged.
+            receivers = match(mActions, intent, type, true);
+            if (!isOrdered) {
+                receivers = inRegistrationOrder(receivers);
+            }
+        } else {
+            final MatchKey key = mMatchProbe.get().set(intent, type);
+            CachedMatch cached = mMatchCache.get(key);
+            if (cached != null && cached.version == version) {
+                mMatchCacheHits.incrementAndGet();
+            } else {
+                // Counted here rather than by the cache, which cannot tell a
+                // stale entry from a current one.
+                mMatchCacheMisses.incrementAndGet();
+                cached = new CachedMatch(version, match(mActions, intent, type,
+                        false));
+                mMatchCache.put(key.copy(), cached);
+            }
+            receivers = cached.receivers(isOrdered);
+            key.clear();
+        }
+        return receivers;
+    }
+
+    /**
+     * Returns the MIME type of {@code intent}. Types which have to be asked
+     * from a ContentProvider are cached per Uri.
+     */
+    private String resolveType(Intent intent) {
+        final Uri data = intent.getData();
+        if (intent.getType() != null || intent.getComponent() != null
+                || data == null || !"content".equals(data.getScheme())) {
+            // No ContentProvider involved.
+            return intent.resolveTypeIfNeeded(mAppContext.getContentResolver());
+        }
+        String type = mTypeCache.get(data);
+        if (type == null) {
+            type = intent.resolveTypeIfNeeded(mAppContext.getContentResolver());
+            if (type != null) {
+                mTypeCache.put(data, type);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Matches {@code intent} against the receivers registered for its action,
+     * or for wildcards covering it. Intents without an action are matched
+     * against the filters without actions instead.
+     * 
+     * @return The matching receivers in priority order, or null if there are
+     *         none. The list is shared through the match cache and must not be
+     *         modified.
+     */
+    private static ArrayList<ReceiverRecord> match(
+            Map<Object, ReceiverRecord[]> actions, Intent intent,
+            String type, boolean debug) {
+        final String action = intent.getAction();
+        final Uri data = intent.getData();
+        final String scheme = intent.getScheme();
+        final Set<String> categories = intent.getCategories();
+
+        if (debug)
+            Log.v(
+                    TAG, "Resolving type " + type + " scheme " + scheme
+                            + " of intent " + intent);
+
+        ArrayList<ReceiverRecord> receivers = null;
+        int sources = 0;
+        if (action != null) {
+            ReceiverRecord[] entries = actions.get(action);
+            if (entries != null) {
+                receivers = match(receivers, entries, action, type, scheme,
+                        data, categories, false, debug);
+                sources++;
+            }
+            // Wildcards: "*", then every prefix of the action ending in '.'.
+            entries = actions.get(new IndexKey(IndexKey.PREFIX, ""));
+            if (entries != null) {
+                receivers = match(receivers, entries, "*", type, scheme, data,
+                        categories, sources > 0, debug);
+                sources++;
+            }
+            for (int dot = action.indexOf('.'); dot >= 0; dot = action
+                    .indexOf('.', dot + 1)) {
+                String prefix = action.substring(0, dot + 1);
+                entries = actions.get(new IndexKey(IndexKey.PREFIX, prefix));
+                if (entries != null) {
+                    // A filter only matches its own wildcard action.
+                    receivers = match(receivers, entries, prefix + "*", type,
+                            scheme, data, categories, sources > 0, debug);
+                    sources++;
+                }
+            }
+        } else {
+            ReceiverRecord[] entries;
+            if (scheme != null) {
+                entries = actions.get(new IndexKey(IndexKey.SCHEME, scheme));
+                if (entries != null) {
+                    receivers = match(receivers, entries, null, type, scheme,
+                            data, categories, false, debug);
+                    sources++;
+                }
+            }
+            if (categories != null && !categories.isEmpty()) {
+                // A matching filter has all of the intent's categories, so
+                // looking up any one of them is enough.
+                entries = actions.get(new IndexKey(IndexKey.CATEGORY,
+                        categories.iterator().next()));
+                if (entries != null) {
+                    receivers = match(receivers, entries, null, type, scheme,
+                            data, categories, false, debug);
+                    sources++;
+                }
+            } else {
+                entries = actions.get(new IndexKey(IndexKey.CATEGORIZED, null));
+                if (entries != null) {
+                    receivers = match(receivers, entries, null, type, scheme,
+                            data, categories, false, debug);
+                    sources++;
+                }
+                entries = actions.get(new IndexKey(IndexKey.ANY, null));
+                if (entries != null) {
+                    receivers = match(receivers, entries, null, type, scheme,
+                            data, categories, false, debug);
+                    sources++;
+                }
+            }
+        }
+        if (receivers != null && sources > 1) {
+            // Merge the lists of the keys looked up back into one order.
+            Collections.sort(receivers, PRIORITY_ORDER);
+        }
+        return receivers;
+    }
+
+    /**
+     * Returns {@code receivers}, matched in priority order, in the order they
+     * registered in instead; a copy unless that makes no difference.
+     */
+    private static ArrayList<ReceiverRecord> inRegistrationOrder(
+            ArrayList<ReceiverRecord> receivers) {
+        if (receivers == null || receivers.size() <= 1) {
+            return receivers;
+        }
+        final ArrayList<ReceiverRecord> result = new ArrayList<ReceiverRecord>(
+                receivers);
+        Collections.sort(result, REGISTRATION_ORDER);
+        return result;
+    }
+
+    /**
+     * Matches the intent described by the arguments against {@code entries},
+     * adding the receivers which match to {@code receivers}.
+     * 
+     * @param action The action to match the filters with: the intent's own,
+     *            or the wildcard under which {@code entries} are listed.
+     * @param dedupe Whether {@code receivers} may already hold some of
+     *            {@code entries}.
+     * @return {@code receivers}, or a new list if it was null and something
+     *         matched.
+     */
+    private static ArrayList<ReceiverRecord> match(
+            ArrayList<ReceiverRecord> receivers, ReceiverRecord[] entries,
+            String action, String type, String scheme, Uri data,
+            Set<String> categories, boolean dedupe, boolean debug) {
+        if (debug)
+            Log.v(TAG, "Action list: " + Arrays.toString(entries));
+
+        for (int i = 0; i < entries.length; i++) {
+            ReceiverRecord receiver = entries[i];
+            if (debug)
+                Log.v(TAG, "Matching against filter " + receiver.filter);
+
+            if (dedupe && receivers != null && receivers.contains(receiver)) {
+                // Filter listed under several of the keys looked up.
+                continue;
+            }
+
+            int match = receiver.filter.match(action, type, scheme,
+                    data,
+                    categories, "LocalBroadcastManager");
+            if (match >= 0) {
+                if (debug)
+                    Log.v(TAG, "  Filter matched!  match=0x" +
+                            Integer.toHexString(match));
+                if (receivers == null) {
+                    receivers = new ArrayList<ReceiverRecord>();
+                }
+                receivers.add(receiver);
+
+            } else {
+                if (debug) {
+                    String reason;
+                    switch (match) {
+                        case IntentFilter.NO_MATCH_ACTION:
+                            reason = "action";
+                            break;
+                        case IntentFilter.NO_MATCH_CATEGORY:
+                            reason = "category";
+                            break;
+                        case IntentFilter.NO_MATCH_DATA:
+                            reason = "data";
+                            break;
+                        case IntentFilter.NO_MATCH_TYPE:
+                            reason = "type";
+                            break;
+                        default:
+                            reason = "unknown reason";
+                            break;
+                    }
+                    Log.v(TAG, "  Filter did not match: " + reason);
+                }
+            }
+        }
+        return receivers;
+    }
+
+    /**
+     * Returns the number of broadcasts whose receivers were found in the match
+     * cache, without matching against the registered filters.
+     */
+    public long getMatchCacheHitCount() {
+        return mMatchCacheHits.get();
+    }
+
+    /**
+     * Returns the number of broadcasts which had to be matched against the
+     * registered filters.
+     */
+    public long getMatchCacheMissCount() {
+        return mMatchCacheMisses.get();
+    }
+
+    /**
+     * Broadcast the given intent to all interested LocalBroadcastReceivers.
+     * This call is asynchronous; it returns immediately, and you will continue
+     * executing while the receivers are run.
+     * 
+     * @param intent The Intent to broadcast; all receivers matching this Intent
+     *            will receive the broadcast.
+     * @see #registerReceiver
+     */
+    public boolean sendBroadcast(Intent intent) {
+        return sendBroadcast(intent, false, LANE_NORMAL);
+    }
+
+    public boolean sendOrderedBroadcast(Intent intent) {
+        return sendBroadcast(intent, true, LANE_NORMAL);
+    }
+
+    /**
+     * Like {@link #sendBroadcast(Intent)}, but queued in the given dispatch
+     * lane: broadcasts in {@link #LANE_URGENT} are dispatched ahead of any
+     * pending in {@link #LANE_NORMAL}, which go ahead of those in
+     * {@link #LANE_BULK}. Within a lane, broadcasts keep the order they were
+     * sent in. A lower lane which keeps being passed over still gets a
+     * broadcast dispatched now and then.
+     * 
+     * @param lane One of {@link #LANE_URGENT}, {@link #LANE_NORMAL} and
+     *            {@link #LANE_BULK}.
+     */
+    public boolean sendBroadcast(Intent intent, int lane) {
+        checkLane(lane);
+        return sendBroadcast(intent, false, lane);
+    }
+
+    /**
+     * Like {@link #sendOrderedBroadcast(Intent)}, but queued in the given
+     * dispatch lane.
+     * 
+     * @see #sendBroadcast(Intent, int)
+     */
+    public boolean sendOrderedBroadcast(Intent intent, int lane) {
+        checkLane(lane);
+        return sendBroadcast(intent, true, lane);
+    }
+
+    /**
+     * Like {@link #sendOrderedBroadcast(Intent)}, but also carries a result
+     * along the receivers, which they read and change with
+     * {@link LocalBroadcastReceiver#setLocalResult} and friends, and hands it
+     * to {@code resultReceiver} once every receiver has run or one of them
+     * consumed the broadcast. {@code resultReceiver} is called even if no
+     * receiver matches the Intent, with the initial result.
+     * <p>
+     * Receivers may defer the broadcast with
+     * {@link LocalBroadcastReceiver#deferBroadcast} to finish their work
+     * asynchronously; the chain resumes when they are done.
+     * 
+     * @param resultReceiver Called with the final result; may be null.
+     * @param executor Runs {@code resultReceiver}; if null, it runs on the
+     *            dispatch thread.
+     * @param initialCode Initial result code, often
+     *            {@code Activity.RESULT_OK}.
+     * @param initialData Initial result data; may be null.
+     * @param initialExtras Initial result extras; may be null.
+     * @return true if there are any receivers for the Intent.
+     */
+    public boolean sendOrderedBroadcastOnExecutor(Intent intent,
+            LocalResultReceiver resultReceiver, Executor executor,
+            int initialCode, String initialData, Bundle initialExtras) {
+        ArrayList<ReceiverRecord> receivers = resolveReceivers(intent, true);
+        final BroadcastRecord record = obtainRecord(intent,
+                receivers != null ? receivers : new ArrayList<ReceiverRecord>(0),
+                true);
+        record.result = new LocalResult(initialCode, initialData,
+                initialExtras);
+        record.resultReceiver = resultReceiver;
+        record.resultExecutor = executor;
+        if (receivers != null || resultReceiver != null) {
+            // Even without receivers, so that the result receiver runs in
+            // order with everything else.
+            enqueue(record);
+        }
+        return receivers != null;
+    }
+
+    /**
+     * Same as
+     * {@link #sendOrderedBroadcastOnExecutor(Intent, LocalResultReceiver, Executor, int, String, Bundle)}
+     * , with {@code resultReceiver} running on {@code scheduler}'s thread
+     * instead, as with {@code Context.sendOrderedBroadcast}; or on the
+     * dispatch thread if {@code scheduler} is null.
+     */
+    public boolean sendOrderedBroadcast(Intent intent,
+            LocalResultReceiver resultReceiver, final Handler scheduler,
+            int initialCode, String initialData, Bundle initialExtras) {
+        Executor executor = null;
+        if (scheduler != null) {
+            executor = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    scheduler.post(command);
+                }
+            };
+        }
+        return sendOrderedBroadcastOnExecutor(intent, resultReceiver,
+                executor, initialCode, initialData, initialExtras);
+    }
+
+    private boolean sendEvent(Object key, Object event, boolean isOrdered) {
+        final EventRecord[] receivers = mEvents.get().get(key);
+        if (receivers == null) {
+            return false;
+        }
+        enqueue(new BroadcastRecord(key, event, receivers, isOrdered));
+        return true;
+    }
+
+    /**
+     * Sends {@code event} to the receivers registered for {@code action} with
+     * {@link #registerEventReceiver(String, LocalEventReceiver, int)}. Like
+     * {@link #sendBroadcast(Intent)}, this returns immediately; the receivers
+     * run later on the dispatch thread, in the same queue as broadcasts.
+     * <p>
+     * Unlike a broadcast, no Intent is built and no IntentFilter matched: the
+     * receivers are looked up by {@code action} alone.
+     * 
+     * @return true if there are any receivers for {@code action}.
+     */
+    public boolean sendEvent(String action, Object event) {
+        return sendEvent((Object) action, event, false);
+    }
+
+    /**
+     * Ordered counterpart of {@link #sendEvent(String, Object)}: receivers run
+     * in priority order until one of them calls
+     * {@link LocalEventReceiver#consumeEvent}.
+     */
+    public boolean sendOrderedEvent(String action, Object event) {
+        return sendEvent((Object) action, event, true);
+    }
+
+    /**
+     * Sends {@code event} to the receivers registered for its class with
+     * {@link #registerEventReceiver(Class, LocalEventReceiver, int)}.
+     * 
+     * @see #sendEvent(String, Object)
+     */
+    public boolean sendEvent(Object event) {
+        return sendEvent(event.getClass(), event, false);
+    }
+
+    /**
+     * Ordered counterpart of {@link #sendEvent(Object)}.
+     */
+    public boolean sendOrderedEvent(Object event) {
+        return sendEvent(event.getClass(), event, true);
+    }
+
+    private boolean sendStickyBroadcast(Intent intent, boolean isOrdered) {
+        synchronized (mReceivers) {
+            mStickyBroadcasts.put(intent, isOrdered);
+            return sendBroadcast(intent, isOrdered, LANE_NORMAL);
+        }
+    }
+
+    /**
+     * Like {@link #sendBroadcast(Intent)}, but the Intent is also kept as the
+     * sticky broadcast of its action: receivers registered later, such as
+     * those of an Activity re-created after a configuration change, get it
+     * delivered upon registration, as long as it matches their filter.
+     * <p>
+     * The most recent sticky broadcast per action is kept, in a cache bounded
+     * by the parcelled size of the intents (see {@link #setStickyCacheSize}).
+     * 
+     * @return true if there were receivers for the Intent right away.
+     * @see #removeStickyBroadcast
+     */
+    public boolean sendStickyBroadcast(Intent intent) {
+        return sendStickyBroadcast(intent, false);
+    }
+
+    /**
+     * Ordered counterpart of {@link #sendStickyBroadcast}. The broadcast is
+     * ordered for the receivers registered now; a receiver registered later
+     * gets the sticky Intent delivered to it alone.
+     */
+    public boolean sendStickyOrderedBroadcast(Intent intent) {
+        return sendStickyBroadcast(intent, true);
+    }
+
+    /**
+     * Forgets the sticky broadcast of the action of {@code intent}, if there
+     * is one.
+     */
+    public void removeStickyBroadcast(Intent intent) {
+        synchronized (mReceivers) {
+            mStickyBroadcasts.remove(intent.getAction());
+        }
+    }
+
+    /**
+     * Sets how many bytes, measured as parcelled intents, the sticky
+     * broadcasts may take. Least recently used actions are evicted first.
+     * Defaults to 64 KiB.
+     */
+    public void setStickyCacheSize(int maxBytes) {
+        synchronized (mReceivers) {
+            mStickyBroadcasts.setMaxSize(maxBytes);
+        }
+    }
+
+    /**
+     * Broadcasts each of the given intents, like {@link #sendBroadcast(Intent)}
+     * would, but matches them all in one go and queues them as a single unit.
+     * They are delivered in iteration order, without other broadcasts in
+     * between.
+     * 
+     * @param intents The Intents to broadcast.
+     * @return true if any of the intents had receivers.
+     */
+    public boolean sendBroadcasts(Collection<Intent> intents) {
+        return sendBroadcasts(intents, false);
+    }
+
+    /**
+     * Ordered counterpart of {@link #sendBroadcasts}: each intent is delivered
+     * as by {@link #sendOrderedBroadcast}, one after the other.
+     */
+    public boolean sendOrderedBroadcasts(Collection<Intent> intents) {
+        return sendBroadcasts(intents, true);
+    }
+
+    /**
+     * Like {@link #sendBroadcast(Intent)}, but meant for frequent updates of
+     * which only the latest matters, such as progress. If a broadcast sent
+     * with the same action and an equal {@code key} is still waiting to be
+     * dispatched, it is replaced by this one instead of being delivered.
+     * 
+     * @param intent The Intent to broadcast.
+     * @param key Distinguishes independent streams of updates for the same
+     *            action, such as one per download; may be null.
+     * @see #getCoalescedBroadcastCount
+     */
+    public boolean sendCoalescedBroadcast(Intent intent, Object key) {
+        return sendCoalescedBroadcast(intent, key, false);
+    }
+
+    /**
+     * Ordered counterpart of {@link #sendCoalescedBroadcast}.
+     */
+    public boolean sendCoalescedOrderedBroadcast(Intent intent, Object key) {
+        return sendCoalescedBroadcast(intent, key, true);
+    }
+
+    /**
+     * Returns the number of broadcasts sent through
+     * {@link #sendCoalescedBroadcast} or
+     * {@link #sendCoalescedOrderedBroadcast} which have been dropped because
+     * a newer one replaced them before they could be dispatched.
+     */
+    public long getCoalescedBroadcastCount() {
+        synchronized (mCoalescedBroadcasts) {
+            return mCoalescedCount;
+        }
+    }
+
+    /**
+     * Like {@link #sendBroadcast(Intent)}, but if there are any receivers for
+     * the Intent this function will block and immediately dispatch them before
+     * returning.
+     */
+    public void sendBroadcastSync(Intent intent) {
+        if (sendBroadcast(intent)) {
+            // The Intent may be queued behind a slot another thread has
+            // claimed but not filled in yet, which the drain cannot get past;
+            // wait for that thread rather than return undispatched.
+            do {
+                executePendingBroadcasts();
+            } while (awaitPendingPublished());
+        }
+    }
+
+    /**
+     * Dispatches {@code intent} as an ordered broadcast right away, on the
+     * calling thread, and returns once a receiver has consumed it or all of
+     * them have run. Unlike {@link #sendBroadcastSync}, nothing else is
+     * dispatched: broadcasts pending in the queue stay there for the dispatch
+     * thread. This makes for a bounded, in-line request/response path; mind
+     * that the receivers run on whichever thread calls this.
+     * <p>
+     * Receivers may set a result, which is discarded, but cannot defer the
+     * broadcast.
+     * 
+     * @return The receiver which consumed the broadcast, or null if none did
+     *         or there are no receivers for the Intent.
+     */
+    public LocalBroadcastReceiver sendOrderedBroadcastSync(Intent intent) {
+        final ArrayList<ReceiverRecord> receivers = resolveReceivers(intent,
+                true);
+        if (receivers == null) {
+            return null;
+        }
+        final BroadcastInstrumentation instrumentation = mInstrumentation;
+        final BroadcastInstrumentation.ActionStats stats = instrumentation != null ? instrumentation
+                .statsFor(intent.getAction()) : null;
+        if (stats != null) {
+            stats.fanOut.record(receivers.size());
+        }
+
+        final DispatchContext context = DispatchContext.enter();
+        try {
+            // No manager or record: there is no queue to resume from.
+            context.result = context.scratchResult;
+            context.result.set(0, null, null);
+            for (int j = 0; j < receivers.size(); j++) {
+                LocalBroadcastReceiver receiver = receivers.get(j).receiver();
+                if (receiver == null) {
+                    continue;
+                }
+                if (stats == null) {
+                    receiver.onReceive(mAppContext, intent);
+                } else {
+                    final long start = System.nanoTime();
+                    receiver.onReceive(mAppContext, intent);
+                    instrumentation.recordReceiver(stats, receiver, intent,
+                            (System.nanoTime() - start) / 1000);
+                }
+                if (context.consumed) {
+                    if (stats != null) {
+                        stats.consumptionDepth.record(j + 1);
+                    }
+                    return receiver;
+                }
+            }
+        } finally {
+            context.exit();
+        }
+        return null;
+    }
+
+    private void sendBroadcastDelayed(Intent intent, boolean isOrdered,
+            long delayMillis, Object token) {
+        synchronized (mDelayedBroadcasts) {
+            final long now = SystemClock.uptimeMillis();
+            scheduleTick(mDelayedBroadcasts.schedule(intent, isOrdered, token,
+                    now + delayMillis), now);
+        }
+    }
+
+    /**
+     * Posts a tick for uptime {@code due}, unless one is posted for then or
+     * earlier already. Must hold the mDelayedBroadcasts lock.
+     */
+    private void scheduleTick(long due, long now) {
+        if (mTickScheduled && mTickTime <= due) {
+            return;
+        }
+        if (mTimerHandler == null) {
+            mTimerHandler = mHandler != null ? mHandler
+                    : newHandler(Looper.getMainLooper());
+        }
+        if (mTickScheduled) {
+            mTimerHandler.removeMessages(MSG_DELAYED_BROADCASTS_TICK);
+        }
+        mTickScheduled = true;
+        mTickTime = due;
+        mTimerHandler.sendEmptyMessageDelayed(MSG_DELAYED_BROADCASTS_TICK,
+                Math.max(0, due - now));
+    }
+
+    /**
+     * Like {@link #sendBroadcast(Intent)}, after {@code delayMillis}. The
+     * receivers are looked up when the delay is over, not now. Broadcasts
+     * fire up to 10 milliseconds late, and may be cancelled until then with
+     * {@link #cancelDelayedBroadcasts}.
+     * <p>
+     * All delayed broadcasts of a manager share one Handler message per tick
+     * while any are pending, however many there are.
+     */
+    public void sendBroadcastDelayed(Intent intent, long delayMillis) {
+        sendBroadcastDelayed(intent, false, delayMillis, null);
+    }
+
+    /**
+     * Same as {@link #sendBroadcastDelayed(Intent, long)}; the broadcast can
+     * also be cancelled with {@link #cancelDelayedBroadcastsWithToken} and
+     * {@code token}.
+     */
+    public void sendBroadcastDelayed(Intent intent, long delayMillis,
+            Object token) {
+        sendBroadcastDelayed(intent, false, delayMillis, token);
+    }
+
+    /**
+     * Like {@link #sendOrderedBroadcast(Intent)}, after {@code delayMillis}.
+     * 
+     * @see #sendBroadcastDelayed(Intent, long)
+     */
+    public void sendOrderedBroadcastDelayed(Intent intent, long delayMillis) {
+        sendBroadcastDelayed(intent, true, delayMillis, null);
+    }
+
+    /**
+     * Like {@link #sendOrderedBroadcast(Intent)}, after {@code delayMillis}.
+     * 
+     * @see #sendBroadcastDelayed(Intent, long, Object)
+     */
+    public void sendOrderedBroadcastDelayed(Intent intent, long delayMillis,
+            Object token) {
+        sendBroadcastDelayed(intent, true, delayMillis, token);
+    }
+
+    /**
+     * Cancels the delayed broadcasts with the given action which have not
+     * fired yet; a debounced broadcast can be cancelled this way right before
+     * being sent again.
+     * 
+     * @return The number of broadcasts cancelled.
+     */
+    public int cancelDelayedBroadcasts(String action) {
+        synchronized (mDelayedBroadcasts) {
+            return mDelayedBroadcasts.cancelAction(action);
+        }
+    }
+
+    /**
+     * Cancels the delayed broadcasts sent with {@code token} which have not
+     * fired yet.
+     * 
+     * @return The number of broadcasts cancelled.
+     */
+    public int cancelDelayedBroadcastsWithToken(Object token) {
+        synchronized (mDelayedBroadcasts) {
+            return mDelayedBroadcasts.cancelToken(token);
+        }
+    }
+
+    /**
+     * Handles a tick: sends the delayed broadcasts which are due, and posts
+     * the next tick whose slot holds any of those left.
+     */
+    private void fireDelayedBroadcasts() {
+        final ArrayList<TimerWheel.Timeout> expired = mExpiredBroadcasts;
+        synchronized (mDelayedBroadcasts) {
+            final long now = SystemClock.uptimeMillis();
+            mDelayedBroadcasts.advance(now, expired);
+            mTickScheduled = false;
+            if (!mDelayedBroadcasts.isEmpty()) {
+                scheduleTick(mDelayedBroadcasts.nextSlotTime(), now);
+            }
+        }
+        for (int i = 0; i < expired.size(); i++) {
+            final TimerWheel.Timeout timeout = expired.get(i);
+            sendBroadcast(timeout.intent, timeout.isOrdered, LANE_NORMAL);
+        }
+        expired.clear();
+    }
+
+    /**
+     * Posts a drain to the Looper or Executor, unless one is pending or
+     * running already.
+     */
+    private void scheduleDrain() {
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            postDrain();
+        }
+    }
+
+    private void postDrain() {
+        if (mExecutor != null) {
+            try {
+                mExecutor.execute(mDrainTask);
+            } catch (RejectedExecutionException e) {
+                // Otherwise no drain would ever be scheduled again.
+                mDrainScheduled.set(false);
+                throw e;
+            }
+        } else {
+            mHandler.sendEmptyMessage(MSG_EXEC_PENDING_BROADCASTS);
+        }
+    }
+
+    /**
+     * Body of the task posted by {@link #scheduleDrain}. The scheduled flag is
+     * only released once the queue is seen empty; a broadcast enqueued after
+     * that schedules a new drain, one that raced with the release is picked
+     * up here. If the drain budget runs out first, the flag is kept and the
+     * task posted again, letting other messages on the Looper run meanwhile.
+     */
+    private void drainScheduledBroadcasts() {
+        do {
+            if (!executePendingBroadcasts(mDrainBudgetCount,
+                    mDrainBudgetMillis)) {
+                mYieldedDrainCount.incrementAndGet();
+                postDrain();
+                return;
+            }
+            mDrainScheduled.set(false);
+        } while (hasPendingBroadcasts()
+                && mDrainScheduled.compareAndSet(false, true));
+    }
+
+    /**
+     * Limits how much work a single scheduled dispatch may do before it gives
+     * the Looper (or Executor thread) back, so that a burst of broadcasts does
+     * not hold up drawing. Remaining broadcasts are dispatched by a new
+     * message posted behind those already queued.
+     * <p>
+     * The budget is checked between broadcasts: an ordered broadcast, once
+     * started, always runs through all of its receivers. It does not apply to
+     * {@link #sendBroadcastSync}.
+     * 
+     * @param maxBroadcasts Broadcasts to dispatch before yielding; 0 for no
+     *            limit.
+     * @param maxMillis Milliseconds to dispatch for before yielding; 0 for no
+     *            limit.
+     * @see #getYieldedDrainCount
+     */
+    public void setDrainBudget(int maxBroadcasts, long maxMillis) {
+        if (maxBroadcasts < 0 || maxMillis < 0) {
+            throw new IllegalArgumentException("Negative drain budget");
+        }
+        mDrainBudgetCount = maxBroadcasts;
+        mDrainBudgetMillis = maxMillis;
+    }
+
+    /**
+     * Starts collecting dispatch statistics into {@code instrumentation}, or
+     * stops collecting if it is null. Without instrumentation, dispatching
+     * does not measure anything.
+     */
+    public void setInstrumentation(BroadcastInstrumentation instrumentation) {
+        mInstrumentation = instrumentation;
+    }
+
+    /**
+     * Returns the number of times dispatching stopped because the budget set
+     * through {@link #setDrainBudget} ran out, with broadcasts left to
+     * dispatch.
+     */
+    public long getYieldedDrainCount() {
+        return mYieldedDrainCount.get();
+    }
+
+    private boolean hasPendingBroadcasts() {
+        synchronized (mDrainLock) {
+            return !isPendingEmpty();
+        }
+    }
+
+    private void executePendingBroadcasts() {
+        executePendingBroadcasts(0, 0);
+    }
+
+    /**
+     * Dispatches pending broadcasts until there are none left or the given
+     * budget is used up.
+     * 
+     * @param maxCount Broadcasts to dispatch at most; 0 for no limit.
+     * @param maxMillis Milliseconds to dispatch for at most; 0 for no limit.
+     * @return false if the budget ran out with broadcasts still pending.
+     */
+    private boolean executePendingBroadcasts(int maxCount, long maxMillis) {
+        final long deadline = maxMillis > 0 ? SystemClock.uptimeMillis()
+                + maxMillis : 0;
+        int count = 0;
+        while (true) {
+            BroadcastRecord br;
+            synchronized (mDrainLock) {
+                if ((maxCount > 0 && count >= maxCount)
+                        || (deadline > 0 && SystemClock.uptimeMillis() >= deadline)) {
+                    return isPendingEmpty();
+                }
+                br = pollPendingBroadcast();
+            }
+            if (br == null) {
+                return true;
+            }
+            count++;
+            if (br.coalescingKey != null) {
+                // From now on newer broadcasts queue up anew instead of
+                // replacing this one.
+                synchronized (mCoalescedBroadcasts) {
+                    // Unless this is a deferred broadcast coming back, whose
+                    // key may have been taken by a newer one meanwhile.
+                    if (mCoalescedBroadcasts.get(br.coalescingKey) == br) {
+                        mCoalescedBroadcasts.remove(br.coalescingKey);
+                    }
+                }
+            }
+
+            final BroadcastInstrumentation instrumentation = mInstrumentation;
+            BroadcastRecord next;
+            for (BroadcastRecord record = br; record != null; record = next) {
+                // Read ahead: a deferred record may be queued again on its
+                // own, without the rest of its batch, before deliver returns.
+                next = record.next;
+                if (record.eventReceivers != null) {
+                    deliverEvent(record);
+                } else if (instrumentation == null ? deliver(record)
+                        : deliverInstrumented(record, instrumentation)) {
+                    if (record.coalescingKey == null) {
+                        recycle(record);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if a receiver deferred the broadcast, which then is not
+     *         done with yet.
+     */
+    private boolean deliver(BroadcastRecord br) {
+        // Change by Kiran Rao
+        // Consumption state is per broadcast; a drain running from within
+        // another receiver's onReceive (sendBroadcastSync) gets a context of
+        // its own.
+        final DispatchContext context = DispatchContext.enter();
+        boolean finished = false;
+        try {
+            if (br.isOrdered) {
+                // The receivers are already sorted by priority (see
+                // registerReceiver). Examine each receiver in turn and execute
+                // its onReceive method; provided the broadcast has not been
+                // consumed already.
+                enterOrdered(br, context);
+                for (int j = br.nextReceiver; j < br.receivers.size(); j++) {
+                    LocalBroadcastReceiver receiver = br.receivers.get(j)
+                            .receiver();
+                    if (receiver == null) {
+                        // Weakly registered and collected meanwhile.
+                        continue;
+                    }
+                    receiver.onReceive(mAppContext, br.intent);
+                    if (paused(br, context, j)) {
+                        return false;
+                    }
+                    if (context.consumed) {
+                        break;
+                    }
+                }
+                finished = true;
+            } else {
+                // In registration order; see matchReceivers.
+                for (int j = 0; j < br.receivers.size(); j++) {
+                    LocalBroadcastReceiver receiver = br.receivers.get(j)
+                            .receiver();
+                    if (receiver != null) {
+                        receiver.onReceive(mAppContext, br.intent);
+                    }
+                }
+            }
+        } finally {
+            context.exit();
+        }
+        if (finished) {
+            finishOrdered(br);
+        }
+        // End of change
+        return true;
+    }
+
+    private void enterOrdered(BroadcastRecord br, DispatchContext context) {
+        if (br.result != null) {
+            context.result = br.result;
+        } else {
+            context.result = context.scratchResult;
+            context.result.set(0, null, null);
+        }
+        context.manager = this;
+        context.record = br;
+    }
+
+    /**
+     * Checks whether the receiver at {@code j} deferred {@code br}. If it did,
+     * the broadcast is left to its {@link PendingLocalResult} and this returns
+     * true; unless that was finished before onReceive even returned.
+     */
+    private static boolean paused(BroadcastRecord br, DispatchContext context,
+            int j) {
+        final PendingLocalResult pending = context.deferred;
+        if (pending == null) {
+            return false;
+        }
+        context.deferred = null;
+        if (context.consumed) {
+            pending.consumeBroadcast();
+        }
+        br.result = pending.result();
+        br.nextReceiver = j + 1;
+        if (pending.detach()) {
+            return true;
+        }
+        context.result = br.result;
+        context.consumed = pending.isBroadcastConsumed();
+        return false;
+    }
+
+    /**
+     * Called through {@link PendingLocalResult#finish}, on any thread. The
+     * broadcast is queued again so that the remaining receivers, or the result
+     * receiver, still run on the dispatch thread.
+     */
+    void resumeBroadcast(Object record, boolean consumed) {
+        final BroadcastRecord br = (BroadcastRecord) record;
+        if (consumed) {
+            br.nextReceiver = br.receivers.size();
+        }
+        br.next = null;
+        enqueue(br);
+    }
+
+    /**
+     * Hands the result of an ordered broadcast whose chain is done to its
+     * result receiver, if it has one.
+     */
+    private static void finishOrdered(BroadcastRecord br) {
+        final LocalResultReceiver resultReceiver = br.resultReceiver;
+        if (resultReceiver == null) {
+            return;
+        }
+        final Intent intent = br.intent;
+        final LocalResult result = br.result;
+        if (br.resultExecutor == null) {
+            resultReceiver.onResult(intent, result.code, result.data,
+                    result.extras);
+            return;
+        }
+        br.resultExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                resultReceiver.onResult(intent, result.code, result.data,
+                        result.extras);
+            }
+        });
+    }
+
+    private void deliverEvent(BroadcastRecord br) {
+        final DispatchContext context = DispatchContext.enter();
+        try {
+            final EventRecord[] receivers = br.eventReceivers;
+            for (int j = 0; j < receivers.length; j++) {
+                receivers[j].receiver.onEvent(br.eventKey, br.event);
+                if (br.isOrdered && context.consumed) {
+                    break;
+                }
+            }
+        } finally {
+            context.exit();
+        }
+    }
+
+    /**
+     * Same as {@link #deliver}, measuring as it goes. Kept apart so that
+     * {@link #deliver} does not pay for instrumentation being off.
+     */
+    private boolean deliverInstrumented(BroadcastRecord br,
+            BroadcastInstrumentation instrumentation) {
+        final BroadcastInstrumentation.ActionStats stats = instrumentation
+                .statsFor(br.intent.getAction());
+        if (br.enqueueTime != 0) {
+            stats.queueWaitMicros.record((System.nanoTime() - br.enqueueTime) / 1000);
+        }
+        if (br.nextReceiver == 0) {
+            stats.fanOut.record(br.receivers.size());
+        }
+
+        final DispatchContext context = DispatchContext.enter();
+        boolean finished = false;
+        try {
+            if (br.isOrdered) {
+                enterOrdered(br, context);
+            }
+            for (int j = br.nextReceiver; j < br.receivers.size(); j++) {
+                LocalBroadcastReceiver receiver = br.receivers.get(j)
+                        .receiver();
+                if (receiver == null) {
+                    continue;
+                }
+                final long start = System.nanoTime();
+                receiver.onReceive(mAppContext, br.intent);
+                instrumentation.recordReceiver(stats, receiver, br.intent,
+                        (System.nanoTime() - start) / 1000);
+                if (br.isOrdered) {
+                    if (paused(br, context, j)) {
+                        return false;
+                    }
+                    if (context.consumed) {
+                        stats.consumptionDepth.record(j + 1);
+                        break;
+                    }
+                }
+            }
+            finished = br.isOrdered;
+        } finally {
+            context.exit();
+        }
+        if (finished) {
+            finishOrdered(br);
         }
+        return true;
     }
 }
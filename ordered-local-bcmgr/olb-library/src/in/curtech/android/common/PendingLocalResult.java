@@ -0,0 +1,117 @@
+package in.curtech.android.common;
+
+import android.os.Bundle;
+
+/**
+ * Handle to an ordered broadcast whose receiver went asynchronous, as returned
+ * by {@link LocalBroadcastReceiver#deferBroadcast}. The rest of the chain
+ * waits, without holding up the dispatch thread, until {@link #finish} is
+ * called; the result can be read and changed from any thread until then.
+ * <p>
+ * This is the counterpart of {@code BroadcastReceiver.PendingResult}.
+ */
+public final class PendingLocalResult {
+
+    private final OrderEnabledLocalBroadcastManager mManager;
+    /** The manager's record of the broadcast; opaque here. */
+    private final Object mRecord;
+    private final LocalResult mResult;
+    private boolean mConsumed;
+    /** Set once onReceive has returned and the chain is actually paused. */
+    private boolean mDetached;
+    private boolean mFinished;
+
+    PendingLocalResult(OrderEnabledLocalBroadcastManager manager,
+            Object record, LocalResult result) {
+        mManager = manager;
+        mRecord = record;
+        mResult = result;
+    }
+
+    LocalResult result() {
+        return mResult;
+    }
+
+    public synchronized int getResultCode() {
+        return mResult.code;
+    }
+
+    public synchronized void setResultCode(int code) {
+        mResult.code = code;
+    }
+
+    public synchronized String getResultData() {
+        return mResult.data;
+    }
+
+    public synchronized void setResultData(String data) {
+        mResult.data = data;
+    }
+
+    /**
+     * @param makeMap If true, an empty Bundle is created and returned if there
+     *            are no extras yet.
+     */
+    public synchronized Bundle getResultExtras(boolean makeMap) {
+        return mResult.extras(makeMap);
+    }
+
+    public synchronized void setResultExtras(Bundle extras) {
+        mResult.extras = extras;
+    }
+
+    public synchronized void setResult(int code, String data, Bundle extras) {
+        mResult.set(code, data, extras);
+    }
+
+    public synchronized boolean isBroadcastConsumed() {
+        return mConsumed;
+    }
+
+    /**
+     * Prevents the receivers after the deferring one from receiving the
+     * broadcast; the final result receiver, if any, is still called.
+     */
+    public synchronized void consumeBroadcast() {
+        mConsumed = true;
+    }
+
+    public synchronized void clearConsumeBroadcast() {
+        mConsumed = false;
+    }
+
+    /**
+     * Resumes the broadcast with the next receiver in line, or hands the
+     * result to the final result receiver if it has been consumed or there
+     * are no more receivers. Must be called exactly once.
+     */
+    public void finish() {
+        final boolean resume;
+        final boolean consumed;
+        synchronized (this) {
+            if (mFinished) {
+                throw new IllegalStateException("Broadcast already finished");
+            }
+            mFinished = true;
+            resume = mDetached;
+            consumed = mConsumed;
+        }
+        // Finished from within onReceive: the manager carries on by itself.
+        if (resume) {
+            mManager.resumeBroadcast(mRecord, consumed);
+        }
+    }
+
+    /**
+     * Called by the manager once the deferring onReceive has returned.
+     * Returns false if the broadcast was finished already, in which case the
+     * manager carries on dispatching right away.
+     */
+    synchronized boolean detach() {
+        if (mFinished) {
+            return false;
+        }
+        mDetached = true;
+        return true;
+    }
+}
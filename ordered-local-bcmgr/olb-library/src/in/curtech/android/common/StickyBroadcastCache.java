@@ -0,0 +1,104 @@
+package in.curtech.android.common;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import android.content.Intent;
+import android.os.Parcel;
+
+/**
+ * Last sticky broadcast per action, for
+ * {@link OrderEnabledLocalBroadcastManager#sendStickyBroadcast}. The cache is
+ * bounded by the parcelled size of the intents it holds; when it grows beyond
+ * that, the least recently sent or replayed actions are evicted first.
+ * <p>
+ * Not thread-safe; the manager synchronizes access.
+ */
+final class StickyBroadcastCache {
+
+    static final class Entry {
+        final Intent intent;
+        final boolean isOrdered;
+        final int size;
+
+        Entry(Intent _intent, boolean _isOrdered, int _size) {
+            intent = _intent;
+            isOrdered = _isOrdered;
+            size = _size;
+        }
+    }
+
+    /** Access ordered, eldest first. Keyed by action; null is a valid key. */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(
+            16, 0.75f, true);
+    private int mMaxSize;
+    private int mSize;
+
+    StickyBroadcastCache(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Stores a copy of {@code intent} as the sticky broadcast of its action,
+     * replacing the previous one.
+     */
+    void put(Intent intent, boolean isOrdered) {
+        final Intent copy = new Intent(intent);
+        final Entry entry = new Entry(copy, isOrdered, sizeOf(copy));
+        final Entry previous = mEntries.put(copy.getAction(), entry);
+        if (previous != null) {
+            mSize -= previous.size;
+        }
+        mSize += entry.size;
+        trimTo(mMaxSize);
+    }
+
+    void remove(String action) {
+        final Entry previous = mEntries.remove(action);
+        if (previous != null) {
+            mSize -= previous.size;
+        }
+    }
+
+    boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * Returns a copy of all sticky broadcasts, least recently used first.
+     */
+    ArrayList<Entry> entries() {
+        return new ArrayList<Entry>(mEntries.values());
+    }
+
+    /**
+     * Marks the sticky broadcast of {@code action} as used.
+     */
+    void touch(String action) {
+        mEntries.get(action);
+    }
+
+    void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        trimTo(maxSize);
+    }
+
+    private void trimTo(int maxSize) {
+        Iterator<Entry> eldest = mEntries.values().iterator();
+        while (mSize > maxSize && eldest.hasNext()) {
+            mSize -= eldest.next().size;
+            eldest.remove();
+        }
+    }
+
+    private static int sizeOf(Intent intent) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            intent.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package in.curtech.android.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.content.Intent;
+
+/**
+ * Delayed broadcasts of an {@link OrderEnabledLocalBroadcastManager}, kept in
+ * a hashed timer wheel: time is cut into ticks, and each broadcast sits in the
+ * slot of the tick it is due at, modulo the number of slots. Advancing the
+ * wheel only looks at the slots of the ticks which went by, so the cost of a
+ * tick does not depend on how many broadcasts are waiting for later ones.
+ * <p>
+ * Broadcasts can be cancelled by action or by the token they were sent with;
+ * both are indexed.
+ * <p>
+ * Not thread-safe; the manager synchronizes access.
+ */
+final class TimerWheel {
+
+    static final class Timeout {
+        final Intent intent;
+        final boolean isOrdered;
+        /** May be null. */
+        final Object token;
+        /** Tick the broadcast is due at. */
+        final long deadline;
+
+        /** Neighbours in the slot. */
+        Timeout prev;
+        Timeout next;
+
+        Timeout(Intent _intent, boolean _isOrdered, Object _token,
+                long _deadline) {
+            intent = _intent;
+            isOrdered = _isOrdered;
+            token = _token;
+            deadline = _deadline;
+        }
+    }
+
+    /** Head and tail of each slot; slots are kept in scheduling order. */
+    private final Timeout[] mSlots;
+    private final Timeout[] mTails;
+    private final int mMask;
+    private final long mTickMillis;
+
+    /** Last tick processed by {@link #advance}. */
+    private long mTick;
+
+    private int mSize;
+
+    private final HashMap<String, ArrayList<Timeout>> mByAction = new HashMap<String, ArrayList<Timeout>>();
+    private final HashMap<Object, ArrayList<Timeout>> mByToken = new HashMap<Object, ArrayList<Timeout>>();
+
+    /**
+     * @param slots Number of slots; rounded up to a power of two.
+     * @param tickMillis Length of a tick; broadcasts fire at most this late.
+     * @param now Current uptime, in milliseconds.
+     */
+    TimerWheel(int slots, long tickMillis, long now) {
+        int size = 1;
+        while (size < slots) {
+            size <<= 1;
+        }
+        mSlots = new Timeout[size];
+        mTails = new Timeout[size];
+        mMask = size - 1;
+        mTickMillis = tickMillis;
+        mTick = now / tickMillis;
+    }
+
+    /**
+     * Schedules {@code intent} to fire at uptime {@code when}, rounded up to
+     * the next tick.
+     *
+     * @return The uptime of that tick.
+     */
+    long schedule(Intent intent, boolean isOrdered, Object token, long when) {
+        long deadline = (when + mTickMillis - 1) / mTickMillis;
+        if (deadline <= mTick) {
+            deadline = mTick + 1;
+        }
+        final Timeout timeout = new Timeout(intent, isOrdered, token, deadline);
+        final int slot = (int) deadline & mMask;
+        timeout.prev = mTails[slot];
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout;
+        } else {
+            mSlots[slot] = timeout;
+        }
+        mTails[slot] = timeout;
+        index(mByAction, intent.getAction(), timeout);
+        if (token != null) {
+            index(mByToken, token, timeout);
+        }
+        mSize++;
+        return deadline * mTickMillis;
+    }
+
+    /**
+     * Cancels the broadcasts with the given action.
+     *
+     * @return The number of broadcasts cancelled.
+     */
+    int cancelAction(String action) {
+        final ArrayList<Timeout> timeouts = mByAction.remove(action);
+        if (timeouts == null) {
+            return 0;
+        }
+        for (int i = 0; i < timeouts.size(); i++) {
+            final Timeout timeout = timeouts.get(i);
+            unlink(timeout);
+            if (timeout.token != null) {
+                unindex(mByToken, timeout.token, timeout);
+            }
+        }
+        return timeouts.size();
+    }
+
+    /**
+     * Cancels the broadcasts sent with the given token.
+     *
+     * @return The number of broadcasts cancelled.
+     */
+    int cancelToken(Object token) {
+        final ArrayList<Timeout> timeouts = mByToken.remove(token);
+        if (timeouts == null) {
+            return 0;
+        }
+        for (int i = 0; i < timeouts.size(); i++) {
+            final Timeout timeout = timeouts.get(i);
+            unlink(timeout);
+            unindex(mByAction, timeout.intent.getAction(), timeout);
+        }
+        return timeouts.size();
+    }
+
+    void clear() {
+        for (int i = 0; i < mSlots.length; i++) {
+            mSlots[i] = null;
+            mTails[i] = null;
+        }
+        mByAction.clear();
+        mByToken.clear();
+        mSize = 0;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Processes the ticks up to uptime {@code now}, moving the broadcasts
+     * which are due to {@code expired}, in the order they were due.
+     */
+    void advance(long now, ArrayList<Timeout> expired) {
+        final long target = now / mTickMillis;
+        // Past a full turn every slot has been looked at; skip the rest.
+        long tick = Math.max(mTick, target - mSlots.length);
+        while (tick < target && mSize > 0) {
+            tick++;
+            Timeout timeout = mSlots[(int) tick & mMask];
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.deadline <= target) {
+                    unlink(timeout);
+                    unindex(mByAction, timeout.intent.getAction(), timeout);
+                    if (timeout.token != null) {
+                        unindex(mByToken, timeout.token, timeout);
+                    }
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+        mTick = target;
+    }
+
+    /**
+     * Returns the uptime of the next tick whose slot holds a broadcast, or -1
+     * if there are none. Only the slots are looked at, not what is in them:
+     * the broadcasts there may be due a turn or more later, in which case
+     * that tick fires nothing. Looking for the earliest deadline instead would
+     * cost as much as the number of broadcasts waiting.
+     */
+    long nextSlotTime() {
+        if (mSize == 0) {
+            return -1;
+        }
+        long tick = mTick + 1;
+        while (mSlots[(int) tick & mMask] == null) {
+            tick++;
+        }
+        return tick * mTickMillis;
+    }
+
+    private void unlink(Timeout timeout) {
+        final int slot = (int) timeout.deadline & mMask;
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            mSlots[slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        } else {
+            mTails[slot] = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        mSize--;
+    }
+
+    private static <K> void index(HashMap<K, ArrayList<Timeout>> index,
+            K key, Timeout timeout) {
+        ArrayList<Timeout> timeouts = index.get(key);
+        if (timeouts == null) {
+            timeouts = new ArrayList<Timeout>(1);
+            index.put(key, timeouts);
+        }
+        timeouts.add(timeout);
+    }
+
+    private static <K> void unindex(HashMap<K, ArrayList<Timeout>> index,
+            K key, Timeout timeout) {
+        final ArrayList<Timeout> timeouts = index.get(key);
+        if (timeouts == null) {
+            return;
+        }
+        timeouts.remove(timeout);
+        if (timeouts.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}